@@ -54,6 +54,8 @@ tasks.withType<JavaCompile>().configureEach {
 	options.encoding = "UTF-8"
 
 	options.release.set(Constants.JAVA_VERSION)
+	// The Vector API is optional at runtime, it is only used if the game is started with its module.
+	options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector"))
 }
 
 tasks.jar {
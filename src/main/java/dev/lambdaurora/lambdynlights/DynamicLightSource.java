@@ -9,6 +9,7 @@
 
 package dev.lambdaurora.lambdynlights;
 
+import dev.lambdaurora.lambdynlights.engine.DynamicLightingEngine;
 import net.minecraft.client.renderer.LevelRenderer;
 import net.minecraft.world.level.Level;
 import org.jetbrains.annotations.ApiStatus;
@@ -18,7 +19,7 @@ import org.jetbrains.annotations.NotNull;
  * Represents a dynamic light source.
  *
  * @author LambdAurora
- * @version 3.0.0
+ * @version 3.3.0
  * @since 1.0.0
  */
 public interface DynamicLightSource {
@@ -85,6 +86,17 @@ public interface DynamicLightSource {
 	 */
 	int getLuminance();
 
+	/**
+	 * Returns the radius of the light emitted by the light source, in blocks.
+	 * <p>
+	 * The radius is capped to {@value DynamicLightingEngine#MAX_RADIUS}, and a radius of {@code 0} or less emits no light.
+	 *
+	 * @return the radius of the light emitted by the light source
+	 */
+	default double getDynamicLightRadius() {
+		return DynamicLightingEngine.DEFAULT_RADIUS;
+	}
+
 	/**
 	 * Executed at each tick.
 	 */
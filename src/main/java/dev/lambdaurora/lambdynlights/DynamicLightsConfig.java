@@ -13,12 +13,16 @@ import com.electronwill.nightconfig.core.file.FileConfig;
 import com.electronwill.nightconfig.core.io.WritingMode;
 import dev.lambdaurora.lambdynlights.config.BooleanSettingEntry;
 import dev.lambdaurora.lambdynlights.config.SettingEntry;
+import dev.lambdaurora.lambdynlights.engine.DynamicLightFalloff;
+import dev.lambdaurora.lambdynlights.engine.DynamicLightingEngine;
+import dev.lambdaurora.lambdynlights.engine.SectionRebuildScheduler;
 import dev.lambdaurora.spruceui.option.SpruceCyclingOption;
 import dev.lambdaurora.spruceui.option.SpruceOption;
 import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.player.LocalPlayer;
 import net.minecraft.network.chat.Text;
+import net.minecraft.util.math.MathHelper;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,7 +33,7 @@ import java.nio.file.Path;
  * Represents the mod configuration.
  *
  * @author LambdAurora
- * @version 3.0.0
+ * @version 3.3.0
  * @since 1.0.0
  */
 public class DynamicLightsConfig {
@@ -39,8 +43,12 @@ public class DynamicLightsConfig {
 	private static final boolean DEFAULT_SELF_LIGHT_SOURCE = true;
 	private static final boolean DEFAULT_BLOCK_ENTITIES_LIGHT_SOURCE = true;
 	private static final boolean DEFAULT_WATER_SENSITIVE_CHECK = true;
+	private static final boolean DEFAULT_OCCLUSION = false;
 	private static final ExplosiveLightingMode DEFAULT_CREEPER_LIGHTING_MODE = ExplosiveLightingMode.SIMPLE;
 	private static final ExplosiveLightingMode DEFAULT_TNT_LIGHTING_MODE = ExplosiveLightingMode.OFF;
+	private static final int DEFAULT_MAX_LIGHT_SOURCES = DynamicLightingEngine.DEFAULT_MAX_LIGHT_SOURCES;
+	private static final int DEFAULT_MAX_SECTION_REBUILDS = SectionRebuildScheduler.DEFAULT_MAX_REBUILDS;
+	private static final DynamicLightFalloff DEFAULT_FALLOFF = DynamicLightFalloff.LINEAR;
 
 	public static final Path CONFIG_FILE_PATH = FabricLoader.getInstance().getConfigDir().resolve("lambdynlights.toml");
 	protected final FileConfig config;
@@ -49,8 +57,12 @@ public class DynamicLightsConfig {
 	private final BooleanSettingEntry entitiesLightSource;
 	private final BooleanSettingEntry selfLightSource;
 	private final BooleanSettingEntry waterSensitiveCheck;
+	private final BooleanSettingEntry occlusion;
 	private ExplosiveLightingMode creeperLightingMode;
 	private ExplosiveLightingMode tntLightingMode;
+	private int maxLightSources;
+	private int maxSectionRebuilds;
+	private DynamicLightFalloff falloff;
 
 	public final SpruceOption dynamicLightsModeOption = new SpruceCyclingOption("lambdynlights.option.mode",
 			amount -> this.setDynamicLightsMode(this.dynamicLightsMode.next()),
@@ -83,6 +95,8 @@ public class DynamicLightsConfig {
 				});
 		this.waterSensitiveCheck = new BooleanSettingEntry("light_sources.water_sensitive_check", DEFAULT_WATER_SENSITIVE_CHECK, this.config,
 				Text.translatable("lambdynlights.tooltip.water_sensitive"));
+		this.occlusion = new BooleanSettingEntry("occlusion", DEFAULT_OCCLUSION, this.config,
+				Text.translatable("lambdynlights.tooltip.occlusion"));
 	}
 
 	/**
@@ -97,10 +111,15 @@ public class DynamicLightsConfig {
 		this.entitiesLightSource.load(this.config);
 		this.selfLightSource.load(this.config);
 		this.waterSensitiveCheck.load(this.config);
+		this.occlusion.load(this.config);
 		this.creeperLightingMode = ExplosiveLightingMode.byId(this.config.getOrElse("light_sources.creeper", DEFAULT_CREEPER_LIGHTING_MODE.getName()))
 				.orElse(DEFAULT_CREEPER_LIGHTING_MODE);
 		this.tntLightingMode = ExplosiveLightingMode.byId(this.config.getOrElse("light_sources.tnt", DEFAULT_TNT_LIGHTING_MODE.getName()))
 				.orElse(DEFAULT_TNT_LIGHTING_MODE);
+		this.maxLightSources = clampMaxLightSources(this.config.getIntOrElse("max_light_sources", DEFAULT_MAX_LIGHT_SOURCES));
+		this.maxSectionRebuilds = clampMaxSectionRebuilds(this.config.getIntOrElse("max_section_rebuilds", DEFAULT_MAX_SECTION_REBUILDS));
+		this.falloff = DynamicLightFalloff.byId(this.config.getOrElse("falloff", DEFAULT_FALLOFF.getName()))
+				.orElse(DEFAULT_FALLOFF);
 
 		LambDynLights.log(LOGGER, "Configuration loaded.");
 	}
@@ -129,8 +148,12 @@ public class DynamicLightsConfig {
 		this.getEntitiesLightSource().set(DEFAULT_ENTITIES_LIGHT_SOURCE);
 		this.getSelfLightSource().set(DEFAULT_SELF_LIGHT_SOURCE);
 		this.getWaterSensitiveCheck().set(DEFAULT_WATER_SENSITIVE_CHECK);
+		this.getOcclusion().set(DEFAULT_OCCLUSION);
 		this.setCreeperLightingMode(DEFAULT_CREEPER_LIGHTING_MODE);
 		this.setTntLightingMode(DEFAULT_TNT_LIGHTING_MODE);
+		this.setMaxLightSources(DEFAULT_MAX_LIGHT_SOURCES);
+		this.setMaxSectionRebuilds(DEFAULT_MAX_SECTION_REBUILDS);
+		this.setFalloff(DEFAULT_FALLOFF);
 	}
 
 	/**
@@ -177,6 +200,13 @@ public class DynamicLightsConfig {
 		return this.waterSensitiveCheck;
 	}
 
+	/**
+	 * {@return the dynamic light occlusion setting holder}
+	 */
+	public BooleanSettingEntry getOcclusion() {
+		return this.occlusion;
+	}
+
 	/**
 	 * Returns the Creeper dynamic lighting mode.
 	 *
@@ -220,4 +250,65 @@ public class DynamicLightsConfig {
 			this.mod.removeTntLightSources();
 		this.config.set("light_sources.tnt", lightingMode.getName());
 	}
+
+	/**
+	 * {@return the maximum number of dynamic light sources that can emit light at the same time}
+	 */
+	public int getMaxLightSources() {
+		return this.maxLightSources;
+	}
+
+	/**
+	 * Sets the maximum number of dynamic light sources that can emit light at the same time.
+	 *
+	 * @param maxLightSources the maximum number of dynamic light sources
+	 */
+	public void setMaxLightSources(int maxLightSources) {
+		this.maxLightSources = clampMaxLightSources(maxLightSources);
+		this.config.set("max_light_sources", this.maxLightSources);
+	}
+
+	/**
+	 * {@return the maximum number of chunk sections rebuilt per frame because of dynamic light changes}
+	 */
+	public int getMaxSectionRebuilds() {
+		return this.maxSectionRebuilds;
+	}
+
+	/**
+	 * Sets the maximum number of chunk sections rebuilt per frame because of dynamic light changes.
+	 *
+	 * @param maxSectionRebuilds the maximum number of chunk sections rebuilt per frame
+	 */
+	public void setMaxSectionRebuilds(int maxSectionRebuilds) {
+		this.maxSectionRebuilds = clampMaxSectionRebuilds(maxSectionRebuilds);
+		this.config.set("max_section_rebuilds", this.maxSectionRebuilds);
+	}
+
+	/**
+	 * Returns the falloff curve of the light emitted by dynamic light sources.
+	 *
+	 * @return the falloff curve
+	 */
+	public DynamicLightFalloff getFalloff() {
+		return this.falloff;
+	}
+
+	/**
+	 * Sets the falloff curve of the light emitted by dynamic light sources.
+	 *
+	 * @param falloff the falloff curve
+	 */
+	public void setFalloff(@NotNull DynamicLightFalloff falloff) {
+		this.falloff = falloff;
+		this.config.set("falloff", falloff.getName());
+	}
+
+	private static int clampMaxLightSources(int maxLightSources) {
+		return MathHelper.clamp(maxLightSources, 1, DynamicLightingEngine.MAX_LIGHT_SOURCES_LIMIT);
+	}
+
+	private static int clampMaxSectionRebuilds(int maxSectionRebuilds) {
+		return MathHelper.clamp(maxSectionRebuilds, 1, SectionRebuildScheduler.MAX_REBUILDS_LIMIT);
+	}
 }
@@ -9,13 +9,19 @@
 
 package dev.lambdaurora.lambdynlights;
 
+import dev.lambdaurora.lambdynlights.accessor.SpatialLookupHolder;
 import dev.lambdaurora.lambdynlights.accessor.WorldRendererAccessor;
 import dev.lambdaurora.lambdynlights.api.DynamicLightHandlers;
 import dev.lambdaurora.lambdynlights.api.DynamicLightsInitializer;
 import dev.lambdaurora.lambdynlights.engine.DynamicLightingEngine;
+import dev.lambdaurora.lambdynlights.engine.LightVolume;
+import dev.lambdaurora.lambdynlights.engine.SectionLightCache;
+import dev.lambdaurora.lambdynlights.engine.SectionRebuildScheduler;
+import dev.lambdaurora.lambdynlights.engine.SpatialLookup;
 import dev.lambdaurora.lambdynlights.resource.item.ItemLightSources;
 import dev.yumi.commons.event.EventManager;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
 import net.fabricmc.api.ClientModInitializer;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderEvents;
@@ -43,18 +49,15 @@ import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Predicate;
 
 /**
  * Represents the LambDynamicLights mod.
  *
  * @author LambdAurora
- * @version 3.1.1
+ * @version 3.3.0
  * @since 1.0.0
  */
 public class LambDynLights implements ClientModInitializer {
@@ -63,10 +66,9 @@ public class LambDynLights implements ClientModInitializer {
 	private static LambDynLights INSTANCE;
 	public final DynamicLightsConfig config = new DynamicLightsConfig(this);
 	public final ItemLightSources itemLightSources = new ItemLightSources();
-	private final DynamicLightingEngine engine = new DynamicLightingEngine();
-	private final Set<DynamicLightSource> dynamicLightSources = new HashSet<>();
-	private final List<DynamicLightSource> toClear = new ArrayList<>();
-	private final ReentrantReadWriteLock lightSourcesLock = new ReentrantReadWriteLock();
+	private final SectionLightCache sectionLightCache = new SectionLightCache();
+	// Dynamic lighting state of the current level, swapped as a whole when changing level.
+	private volatile LevelLighting lighting = new LevelLighting(null);
 	private long lastUpdate = System.currentTimeMillis();
 	private int lastUpdateCount = 0;
 
@@ -89,16 +91,33 @@ public class LambDynLights implements ClientModInitializer {
 		});
 
 		ClientTickEvents.END_WORLD_TICK.register(level -> {
-			this.lightSourcesLock.writeLock().lock();
-			this.engine.computeSpatialLookup(this.dynamicLightSources);
-			this.toClear.forEach(source -> source.lambdynlights$scheduleTrackedChunksRebuild(Minecraft.getInstance().levelRenderer));
-			this.toClear.clear();
-			this.lightSourcesLock.writeLock().unlock();
+			var camera = Minecraft.getInstance().getCameraEntity();
+			var lighting = this.lighting;
+			var previousLookup = lighting.engine.getSpatialLookup();
+			boolean settingsChanged = lighting.engine.getFalloff() != this.config.getFalloff()
+					|| lighting.engine.hasOcclusion() != this.config.getOcclusion().get();
+
+			lighting.engine.setFalloff(this.config.getFalloff());
+			lighting.engine.setOcclusion(this.config.getOcclusion().get());
+			if (camera != null) {
+				lighting.engine.computeSpatialLookup(lighting.dynamicLightSources, this.config.getMaxLightSources(),
+						camera.getX(), camera.getEyeY(), camera.getZ()
+				);
+			} else {
+				lighting.engine.computeSpatialLookup(lighting.dynamicLightSources, this.config.getMaxLightSources(), 0, 0, 0);
+			}
+
+			// Only schedule rebuilds once the new spatial lookup is published, so they never see the removed light sources.
+			this.scheduleClearedLightSourcesRebuild();
+			if (settingsChanged) {
+				this.scheduleLitSectionsRebuild(previousLookup);
+			}
 		});
 
 		WorldRenderEvents.START.register(context -> {
 			Profiler.get().swap("dynamic_lighting");
 			this.updateAll(context.worldRenderer());
+			this.flushChunkRebuilds(context.worldRenderer());
 		});
 
 		DynamicLightHandlers.registerDefaultHandlers();
@@ -118,12 +137,70 @@ public class LambDynLights implements ClientModInitializer {
 			this.lastUpdate = now;
 			this.lastUpdateCount = 0;
 
-			for (var lightSource : this.dynamicLightSources) {
+			for (var lightSource : this.lighting.dynamicLightSources) {
 				if (lightSource.lambdynlights$updateDynamicLight(renderer)) this.lastUpdateCount++;
 			}
 		}
 	}
 
+	/**
+	 * Schedules the rebuild of the chunks tracked by the light sources removed since the last tick.
+	 * <p>
+	 * The pending light sources are swapped out first, so light sources removed while scheduling are kept for the next tick.
+	 */
+	private void scheduleClearedLightSourcesRebuild() {
+		var lighting = this.lighting;
+		if (lighting.toClear.isEmpty()) return;
+
+		var clearing = lighting.toClear;
+		lighting.toClear = lighting.clearing;
+		lighting.clearing = clearing;
+
+		var renderer = Minecraft.getInstance().levelRenderer;
+		for (var source : clearing) {
+			source.lambdynlights$scheduleTrackedChunksRebuild(renderer);
+		}
+		clearing.clear();
+	}
+
+	/**
+	 * Schedules the rebuild of every chunk section lit before or after a change of the dynamic lighting settings.
+	 * <p>
+	 * The light sources then track the chunk sections they light with the new settings on their next update,
+	 * as those come from the spatial lookup.
+	 *
+	 * @param previousLookup the spatial lookup published before the settings changed
+	 */
+	private void scheduleLitSectionsRebuild(@NotNull SpatialLookup previousLookup) {
+		var lighting = this.lighting;
+
+		previousLookup.forEachLitSection(section -> lighting.rebuildScheduler.schedule(section, 15));
+		lighting.engine.getSpatialLookup().forEachLitSection(section -> lighting.rebuildScheduler.schedule(section, 15));
+	}
+
+	/**
+	 * Schedules the rebuild of the chunk sections requested since the last flush, each chunk section being rebuilt once.
+	 * <p>
+	 * At most {@linkplain DynamicLightsConfig#getMaxSectionRebuilds() a given number} of chunk sections are rebuilt per frame,
+	 * prioritized by distance to the camera and light change, the others are kept for the next frames.
+	 *
+	 * @param renderer the renderer
+	 */
+	private void flushChunkRebuilds(@NotNull LevelRenderer renderer) {
+		var lighting = this.lighting;
+		if (lighting.rebuildScheduler.size() == 0) return;
+
+		var client = Minecraft.getInstance();
+		var camera = client.getCameraEntity();
+		if (client.level == null || camera == null) return;
+
+		// Chunk sections whose light sources did not change since their last rebuild are skipped.
+		lighting.rebuildScheduler.flush(
+				lighting.engine.getSpatialLookup(), this.config.getMaxSectionRebuilds(), camera.getX(), camera.getEyeY(), camera.getZ(),
+				((WorldRendererAccessor) renderer)::lambdynlights$scheduleChunkRebuild
+		);
+	}
+
 	/**
 	 * Returns the last number of dynamic light source updates.
 	 *
@@ -142,10 +219,11 @@ public class LambDynLights implements ClientModInitializer {
 	 * @return the modified lightmap coordinates
 	 */
 	public int getLightmapWithDynamicLight(@NotNull BlockAndTintGetter level, @NotNull BlockPos pos, int lightmap) {
-		if (!(level instanceof ClientLevel)) this.lightSourcesLock.readLock().lock();
-		double light = this.getDynamicLightLevel(pos);
-		if (!(level instanceof ClientLevel)) this.lightSourcesLock.readLock().unlock();
-		return this.getLightmapWithDynamicLight(light, lightmap);
+		// Chunk section builds read the cached light levels of the whole chunk section.
+		double dynamicLightLevel = level instanceof SpatialLookupHolder holder
+				? holder.lambdynlights$getSectionLightView().getDynamicLightLevel(pos)
+				: this.lighting.engine.getDynamicLightLevel(pos);
+		return this.getLightmapWithDynamicLight(dynamicLightLevel, lightmap);
 	}
 
 	/**
@@ -179,7 +257,78 @@ public class LambDynLights implements ClientModInitializer {
 	 * @return the dynamic light level at the specified position
 	 */
 	public double getDynamicLightLevel(@NotNull BlockPos pos) {
-		return this.engine.getDynamicLightLevel(pos);
+		return this.lighting.engine.getDynamicLightLevel(pos);
+	}
+
+	/**
+	 * {@return the last published dynamic lighting spatial lookup}
+	 * <p>
+	 * The returned spatial lookup is immutable and can be queried from any thread.
+	 */
+	public @NotNull SpatialLookup getSpatialLookup() {
+		return this.lighting.engine.getSpatialLookup();
+	}
+
+	/**
+	 * Returns the light volume of the given light source if dynamic light is blocked by opaque blocks.
+	 *
+	 * @param lightSource the light source
+	 * @return the light volume of the light source if dynamic light is occluded, or {@code null} otherwise
+	 */
+	public @Nullable LightVolume getLightVolume(@NotNull DynamicLightSource lightSource) {
+		var engine = this.lighting.engine;
+		// The setting is only applied to the engine at the end of the tick, until then the light is not occluded yet.
+		if (!this.config.getOcclusion().get() || !engine.hasOcclusion()) return null;
+
+		return engine.getLightVolume(lightSource);
+	}
+
+	/**
+	 * {@return the packed coordinates of the origin chunk section of the lit chunk sections of the given light source}
+	 *
+	 * @param lightSource the light source
+	 * @see DynamicLightingEngine#getLitSectionOrigin(DynamicLightSource)
+	 */
+	public long getLitSectionOrigin(@NotNull DynamicLightSource lightSource) {
+		return this.lighting.engine.getLitSectionOrigin(lightSource);
+	}
+
+	/**
+	 * {@return the chunk sections lit by the given light source in the last spatial lookup, as a section mask}
+	 *
+	 * @param lightSource the light source
+	 * @see DynamicLightingEngine#getLitSectionMask(DynamicLightSource)
+	 */
+	public int getLitSectionMask(@NotNull DynamicLightSource lightSource) {
+		return this.lighting.engine.getLitSectionMask(lightSource);
+	}
+
+	/**
+	 * Notifies the dynamic lighting engine that the given block changed.
+	 *
+	 * @param pos the position of the changed block
+	 */
+	public void onBlockChanged(@NotNull BlockPos pos) {
+		this.lighting.engine.onBlockChanged(pos);
+	}
+
+	/**
+	 * {@return the cache of the dynamic light levels of whole chunk sections}
+	 */
+	public @NotNull SectionLightCache getSectionLightCache() {
+		return this.sectionLightCache;
+	}
+
+	/**
+	 * {@return the dynamic lighting spatial lookup to use to compute light in the given level}
+	 *
+	 * @param level the level in which the light is computed
+	 */
+	public @NotNull SpatialLookup getSpatialLookup(@NotNull BlockAndTintGetter level) {
+		// Chunk section builds hold on to the spatial lookup published when they started.
+		return level instanceof SpatialLookupHolder holder
+				? holder.lambdynlights$getSpatialLookup()
+				: this.lighting.engine.getSpatialLookup();
 	}
 
 	/**
@@ -194,7 +343,7 @@ public class LambDynLights implements ClientModInitializer {
 			return;
 		if (this.containsLightSource(lightSource))
 			return;
-		this.dynamicLightSources.add(lightSource);
+		this.lighting.dynamicLightSources.add(lightSource);
 	}
 
 	/**
@@ -207,7 +356,7 @@ public class LambDynLights implements ClientModInitializer {
 		if (!lightSource.getDynamicLightLevel().isClientSide())
 			return false;
 
-		return this.dynamicLightSources.contains(lightSource);
+		return this.lighting.dynamicLightSources.contains(lightSource);
 	}
 
 	/**
@@ -216,7 +365,7 @@ public class LambDynLights implements ClientModInitializer {
 	 * @return the number of dynamic light sources emitting light
 	 */
 	public int getLightSourcesCount() {
-		return this.dynamicLightSources.size();
+		return this.lighting.dynamicLightSources.size();
 	}
 
 	/**
@@ -225,31 +374,48 @@ public class LambDynLights implements ClientModInitializer {
 	 * @param lightSource the light source to remove
 	 */
 	public void removeLightSource(@NotNull DynamicLightSource lightSource) {
-		var dynamicLightSources = this.dynamicLightSources.iterator();
+		var dynamicLightSources = this.lighting.dynamicLightSources.iterator();
 		DynamicLightSource it;
 		while (dynamicLightSources.hasNext()) {
 			it = dynamicLightSources.next();
 			if (it.equals(lightSource)) {
 				dynamicLightSources.remove();
-				this.toClear.add(lightSource);
+				this.lighting.toClear.add(lightSource);
 				break;
 			}
 		}
 	}
 
+	/**
+	 * Switches the dynamic lighting state to the given level.
+	 * <p>
+	 * Each level has its own dynamic lighting engine and light sources. The state of the previous level is discarded as a whole,
+	 * without resetting its light sources nor scheduling any rebuild, as its chunks are going away with it.
+	 *
+	 * @param level the new level
+	 */
+	public void switchLevel(@Nullable ClientLevel level) {
+		if (this.lighting.level == level) return;
+
+		this.lighting = new LevelLighting(level);
+		this.sectionLightCache.clear();
+	}
+
 	/**
 	 * Clears light sources.
 	 */
 	public void clearLightSources() {
-		var dynamicLightSources = this.dynamicLightSources.iterator();
+		var dynamicLightSources = this.lighting.dynamicLightSources.iterator();
 		DynamicLightSource it;
 		while (dynamicLightSources.hasNext()) {
 			it = dynamicLightSources.next();
 			dynamicLightSources.remove();
 			if (it.getLuminance() > 0)
 				it.resetDynamicLight();
-			this.toClear.add(it);
+			this.lighting.toClear.add(it);
 		}
+
+		this.sectionLightCache.clear();
 	}
 
 	/**
@@ -258,7 +424,7 @@ public class LambDynLights implements ClientModInitializer {
 	 * @param filter the removal filter
 	 */
 	public void removeLightSources(@NotNull Predicate<DynamicLightSource> filter) {
-		var dynamicLightSources = this.dynamicLightSources.iterator();
+		var dynamicLightSources = this.lighting.dynamicLightSources.iterator();
 		DynamicLightSource it;
 		while (dynamicLightSources.hasNext()) {
 			it = dynamicLightSources.next();
@@ -266,7 +432,7 @@ public class LambDynLights implements ClientModInitializer {
 				dynamicLightSources.remove();
 				if (it.getLuminance() > 0)
 					it.resetDynamicLight();
-				this.toClear.add(it);
+				this.lighting.toClear.add(it);
 				break;
 			}
 		}
@@ -337,27 +503,46 @@ public class LambDynLights implements ClientModInitializer {
 
 	/**
 	 * Schedules a chunk rebuild at the specified chunk position.
+	 * <p>
+	 * Rebuilds are deferred to the start of the next frames, where every requested chunk section is rebuilt once
+	 * no matter how many light sources requested it.
 	 *
 	 * @param renderer the renderer
 	 * @param chunkPos the chunk position
 	 */
 	public static void scheduleChunkRebuild(@NotNull LevelRenderer renderer, @NotNull BlockPos chunkPos) {
-		scheduleChunkRebuild(renderer, chunkPos.getX(), chunkPos.getY(), chunkPos.getZ());
+		scheduleChunkRebuild(renderer, chunkPos.asLong());
 	}
 
 	/**
 	 * Schedules a chunk rebuild at the specified chunk position.
+	 * <p>
+	 * Rebuilds are deferred to the start of the next frames, where every requested chunk section is rebuilt once
+	 * no matter how many light sources requested it.
 	 *
 	 * @param renderer the renderer
 	 * @param chunkPos the packed chunk position
 	 */
 	public static void scheduleChunkRebuild(@NotNull LevelRenderer renderer, long chunkPos) {
-		scheduleChunkRebuild(renderer, BlockPos.unpackLongX(chunkPos), BlockPos.unpackLongY(chunkPos), BlockPos.unpackLongZ(chunkPos));
+		scheduleChunkRebuild(renderer, chunkPos, 15);
+	}
+
+	/**
+	 * Schedules a chunk rebuild at the specified chunk position.
+	 * <p>
+	 * Rebuilds are deferred to the start of the next frames, where every requested chunk section is rebuilt once
+	 * no matter how many light sources requested it. Chunk sections with a larger light change are rebuilt first.
+	 *
+	 * @param renderer the renderer
+	 * @param chunkPos the packed chunk position
+	 * @param lightChange how much the light changed in the chunk section, as a light level
+	 */
+	public static void scheduleChunkRebuild(@NotNull LevelRenderer renderer, long chunkPos, int lightChange) {
+		INSTANCE.lighting.rebuildScheduler.schedule(chunkPos, lightChange);
 	}
 
 	public static void scheduleChunkRebuild(@NotNull LevelRenderer renderer, int x, int y, int z) {
-		if (Minecraft.getInstance().level != null)
-			((WorldRendererAccessor) renderer).lambdynlights$scheduleChunkRebuild(x, y, z, false);
+		scheduleChunkRebuild(renderer, BlockPos.asLong(x, y, z));
 	}
 
 	/**
@@ -368,13 +553,21 @@ public class LambDynLights implements ClientModInitializer {
 	 * @param newPos the set of new chunk coordinates to add this chunk to it
 	 */
 	public static void updateTrackedChunks(@NotNull BlockPos chunkPos, @Nullable LongOpenHashSet old, @Nullable LongOpenHashSet newPos) {
-		if (old != null || newPos != null) {
-			long pos = chunkPos.asLong();
-			if (old != null)
-				old.remove(pos);
-			if (newPos != null)
-				newPos.add(pos);
-		}
+		updateTrackedChunks(chunkPos.asLong(), old, newPos);
+	}
+
+	/**
+	 * Updates the tracked chunk sets.
+	 *
+	 * @param chunkPos the packed chunk position
+	 * @param old the set of old chunk coordinates to remove this chunk from it
+	 * @param newPos the set of new chunk coordinates to add this chunk to it
+	 */
+	public static void updateTrackedChunks(long chunkPos, @Nullable LongOpenHashSet old, @Nullable LongOpenHashSet newPos) {
+		if (old != null)
+			old.remove(chunkPos);
+		if (newPos != null)
+			newPos.add(chunkPos);
 	}
 
 	/**
@@ -432,4 +625,21 @@ public class LambDynLights implements ClientModInitializer {
 	public static LambDynLights get() {
 		return INSTANCE;
 	}
+
+	/**
+	 * Represents the dynamic lighting state of a single level.
+	 */
+	private static final class LevelLighting {
+		private final @Nullable ClientLevel level;
+		private final DynamicLightingEngine engine = new DynamicLightingEngine();
+		private final Set<DynamicLightSource> dynamicLightSources = new HashSet<>();
+		// Removed light sources whose tracked chunks still have to be rebuilt, drained once per tick.
+		private ReferenceOpenHashSet<DynamicLightSource> toClear = new ReferenceOpenHashSet<>();
+		private ReferenceOpenHashSet<DynamicLightSource> clearing = new ReferenceOpenHashSet<>();
+		private final SectionRebuildScheduler rebuildScheduler = new SectionRebuildScheduler();
+
+		private LevelLighting(@Nullable ClientLevel level) {
+			this.level = level;
+		}
+	}
 }
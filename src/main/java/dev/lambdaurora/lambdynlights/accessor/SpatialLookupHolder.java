@@ -0,0 +1,35 @@
+/*
+ * Copyright © 2026 LambdAurora <email@lambdaurora.dev>
+ *
+ * This file is part of LambDynamicLights.
+ *
+ * Licensed under the Lambda License. For more information,
+ * see the LICENSE file.
+ */
+
+package dev.lambdaurora.lambdynlights.accessor;
+
+import dev.lambdaurora.lambdynlights.engine.SectionLightCache;
+import dev.lambdaurora.lambdynlights.engine.SpatialLookup;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * Represents an object holding on to a single dynamic lighting spatial lookup for its whole lifetime,
+ * like the level view used to build a chunk section.
+ *
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@ApiStatus.Internal
+@ApiStatus.NonExtendable
+public interface SpatialLookupHolder {
+	/**
+	 * {@return the spatial lookup held by this object}
+	 */
+	SpatialLookup lambdynlights$getSpatialLookup();
+
+	/**
+	 * {@return the view of the chunk section light cache for the spatial lookup held by this object}
+	 */
+	SectionLightCache.View lambdynlights$getSectionLightView();
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright © 2026 LambdAurora <email@lambdaurora.dev>
+ *
+ * This file is part of LambDynamicLights.
+ *
+ * Licensed under the Lambda License. For more information,
+ * see the LICENSE file.
+ */
+
+package dev.lambdaurora.lambdynlights.engine;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import net.minecraft.core.BlockPos;
+
+import java.util.Arrays;
+
+/**
+ * Represents an open-addressing table mapping packed cell coordinates to a range of entries in a spatial lookup.
+ * <p>
+ * Keys are compared exactly, which means two different cells never share a range of entries.
+ * <p>
+ * The table is filled like a counting sort: every entry is first {@linkplain #add(long, Buffers) counted} in its cell,
+ * then the ranges are {@linkplain #computeRanges(Buffers) computed}, and finally each entry {@linkplain #claim(int) claims}
+ * its index in the range of its cell.
+ * <p>
+ * Ranges are laid out in the Z-order (Morton order) of the cells, so cells close in space have their entries close in memory.
+ * In particular, the cells of a chunk section are aligned on the Z-order and have contiguous ranges.
+ * <p>
+ * As the number of cells is only known once every entry has been counted, the table filled by the counting sort
+ * is sized after the number of entries and reused from one fill to the next,
+ * the ranges are then {@linkplain #copyTo(CellLookupTable, Buffers) copied} to a table sized after the number of cells.
+ * The capacity of a table never changes, so a table can be cleared and filled again while being read,
+ * which only yields wrong ranges.
+ *
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+final class CellLookupTable {
+	// Even, so that the cells of a chunk section stay aligned on the Z-order.
+	private static final int MORTON_BIAS = 1 << 20;
+	private static final int RADIX_BITS = 8;
+	private static final int RADIX = 1 << RADIX_BITS;
+
+	private final long[] keys;
+	private final int[] starts;
+	private final int[] ends;
+	private final int mask;
+	private int size = 0;
+
+	/**
+	 * Creates a new cell lookup table.
+	 *
+	 * @param expectedCells the maximum number of cells this table is expected to hold
+	 */
+	CellLookupTable(int expectedCells) {
+		int capacity = HashCommon.arraySize(expectedCells, .5f);
+		this.keys = new long[capacity];
+		this.starts = new int[capacity];
+		this.ends = new int[capacity];
+		this.mask = capacity - 1;
+		Arrays.fill(this.starts, -1);
+	}
+
+	/**
+	 * Returns whether this table can hold the given number of cells.
+	 *
+	 * @param cells the number of cells
+	 * @return {@code true} if the cells fit in this table, or {@code false} otherwise
+	 */
+	boolean fits(int cells) {
+		return HashCommon.arraySize(cells, .5f) <= this.keys.length;
+	}
+
+	/**
+	 * {@return the capacity of this table}
+	 */
+	int capacity() {
+		return this.keys.length;
+	}
+
+	/**
+	 * {@return the number of cells in this table}
+	 */
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * Removes every cell from this table, keeping its capacity.
+	 */
+	void clear() {
+		Arrays.fill(this.starts, -1);
+		this.size = 0;
+	}
+
+	/**
+	 * Counts one more entry in the given cell, adding the cell to this table if needed.
+	 *
+	 * @param cellKey the packed cell coordinates
+	 * @param buffers the buffers used to fill this table, which must fit the expected number of cells
+	 * @return the slot of the cell
+	 */
+	int add(long cellKey, Buffers buffers) {
+		int slot = (int) HashCommon.mix(cellKey) & this.mask;
+
+		while (this.starts[slot] != -1) {
+			if (this.keys[slot] == cellKey) {
+				this.ends[slot]++;
+				return slot;
+			}
+
+			slot = (slot + 1) & this.mask;
+		}
+
+		this.keys[slot] = cellKey;
+		this.starts[slot] = 0;
+		this.ends[slot] = 1;
+		buffers.slots[this.size] = slot;
+		buffers.codes[this.size] = mortonCode(cellKey);
+		this.size++;
+		return slot;
+	}
+
+	/**
+	 * Computes the range of entries of each cell from the number of entries counted in each cell.
+	 * <p>
+	 * Ranges are laid out in the Z-order of the cells.
+	 *
+	 * @param buffers the buffers used to fill this table
+	 */
+	void computeRanges(Buffers buffers) {
+		buffers.sort(this.size);
+
+		int offset = 0;
+
+		for (int i = 0; i < this.size; i++) {
+			int slot = buffers.slots[i];
+			int count = this.ends[slot];
+
+			this.starts[slot] = offset;
+			this.ends[slot] = offset;
+			offset += count;
+		}
+	}
+
+	/**
+	 * Copies every cell of this table and its range of entries into the given empty table.
+	 * <p>
+	 * Cells are copied in Z-order, once every entry has {@linkplain #claim(int) claimed} its index.
+	 *
+	 * @param table the table to copy the cells into, which must fit the cells of this table
+	 * @param buffers the buffers used to fill this table
+	 */
+	void copyTo(CellLookupTable table, Buffers buffers) {
+		for (int i = 0; i < this.size; i++) {
+			int slot = buffers.slots[i];
+			table.put(this.keys[slot], this.starts[slot], this.ends[slot]);
+		}
+	}
+
+	private void put(long cellKey, int start, int end) {
+		int slot = (int) HashCommon.mix(cellKey) & this.mask;
+
+		while (this.starts[slot] != -1) {
+			slot = (slot + 1) & this.mask;
+		}
+
+		this.keys[slot] = cellKey;
+		this.ends[slot] = end;
+		this.starts[slot] = start;
+		this.size++;
+	}
+
+	/**
+	 * {@return the Morton code of the given cell, interleaving the bits of its coordinates with the X coordinate first}
+	 * <p>
+	 * Coordinates wrap past a million cells from the origin, which only changes the layout of far away cells.
+	 *
+	 * @param cellKey the packed cell coordinates
+	 */
+	static long mortonCode(long cellKey) {
+		return spreadBits(BlockPos.unpackLongX(cellKey) + MORTON_BIAS)
+				| spreadBits(BlockPos.unpackLongY(cellKey) + MORTON_BIAS) << 1
+				| spreadBits(BlockPos.unpackLongZ(cellKey) + MORTON_BIAS) << 2;
+	}
+
+	/**
+	 * {@return the lowest 21 bits of the given value, spread so that each bit is followed by two zero bits}
+	 *
+	 * @param value the value to spread
+	 */
+	private static long spreadBits(int value) {
+		long bits = value & 0x1fffffL;
+		bits = (bits | bits << 32) & 0x1f00000000ffffL;
+		bits = (bits | bits << 16) & 0x1f0000ff0000ffL;
+		bits = (bits | bits << 8) & 0x100f00f00f00f00fL;
+		bits = (bits | bits << 4) & 0x10c30c30c30c30c3L;
+		bits = (bits | bits << 2) & 0x1249249249249249L;
+		return bits;
+	}
+
+	/**
+	 * Claims the next free index in the range of entries of the cell at the given slot.
+	 * <p>
+	 * Once every counted entry has been claimed, the range of each cell is complete.
+	 *
+	 * @param slot the slot of the cell
+	 * @return the claimed index
+	 */
+	int claim(int slot) {
+		return this.ends[slot]++;
+	}
+
+	/**
+	 * Finds the slot of the given cell in this table.
+	 *
+	 * @param cellKey the packed cell coordinates
+	 * @return the slot of the cell if present, or {@code -1} otherwise
+	 */
+	int find(long cellKey) {
+		int slot = (int) HashCommon.mix(cellKey) & this.mask;
+
+		while (this.starts[slot] != -1) {
+			if (this.keys[slot] == cellKey) return slot;
+			slot = (slot + 1) & this.mask;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * {@return the index of the first entry of the cell at the given slot, inclusive}
+	 *
+	 * @param slot the slot of the cell
+	 */
+	int start(int slot) {
+		return this.starts[slot];
+	}
+
+	/**
+	 * {@return the index of the last entry of the cell at the given slot, exclusive}
+	 *
+	 * @param slot the slot of the cell
+	 */
+	int end(int slot) {
+		return this.ends[slot];
+	}
+
+	/**
+	 * Represents the buffers used to fill cell lookup tables.
+	 * <p>
+	 * The buffers are reused from one fill to the next, so filling a table does not allocate anything.
+	 */
+	static final class Buffers {
+		// Slot and Morton code of each cell, in insertion order until sorted.
+		private int[] slots = new int[0];
+		private long[] codes = new long[0];
+		private int[] sortedSlots = new int[0];
+		private long[] sortedCodes = new long[0];
+		private final int[] counts = new int[RADIX];
+
+		/**
+		 * Grows these buffers to fit the given number of cells if needed.
+		 *
+		 * @param cells the number of cells to fit
+		 */
+		void ensureCapacity(int cells) {
+			if (cells > this.slots.length) {
+				int capacity = HashCommon.nextPowerOfTwo(cells);
+				this.slots = new int[capacity];
+				this.codes = new long[capacity];
+				this.sortedSlots = new int[capacity];
+				this.sortedCodes = new long[capacity];
+			}
+		}
+
+		/**
+		 * Sorts the slots of the given number of cells by Morton code, using a least significant digit radix sort.
+		 * <p>
+		 * Digits shared by every cell are skipped, which leaves only a few passes as cells are close to each other.
+		 *
+		 * @param size the number of cells
+		 */
+		private void sort(int size) {
+			if (size <= 1) return;
+
+			long varying = 0;
+			for (int i = 1; i < size; i++) {
+				varying |= this.codes[i] ^ this.codes[0];
+			}
+
+			for (int shift = 0; shift < Long.SIZE && (varying >>> shift) != 0; shift += RADIX_BITS) {
+				if (((varying >>> shift) & (RADIX - 1)) == 0) continue;
+
+				Arrays.fill(this.counts, 0);
+				for (int i = 0; i < size; i++) {
+					this.counts[(int) (this.codes[i] >>> shift) & (RADIX - 1)]++;
+				}
+
+				int offset = 0;
+				for (int digit = 0; digit < RADIX; digit++) {
+					int count = this.counts[digit];
+					this.counts[digit] = offset;
+					offset += count;
+				}
+
+				for (int i = 0; i < size; i++) {
+					long code = this.codes[i];
+					int index = this.counts[(int) (code >>> shift) & (RADIX - 1)]++;
+					this.sortedCodes[index] = code;
+					this.sortedSlots[index] = this.slots[i];
+				}
+
+				var codes = this.codes;
+				this.codes = this.sortedCodes;
+				this.sortedCodes = codes;
+
+				var slots = this.slots;
+				this.slots = this.sortedSlots;
+				this.sortedSlots = slots;
+			}
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2026 LambdAurora <email@lambdaurora.dev>
+ *
+ * This file is part of LambDynamicLights.
+ *
+ * Licensed under the Lambda License. For more information,
+ * see the LICENSE file.
+ */
+
+package dev.lambdaurora.lambdynlights.engine;
+
+import net.minecraft.util.math.MathHelper;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Represents the falloff curve of the light emitted by dynamic light sources.
+ * <p>
+ * Each curve is precomputed into a table indexed by the quantized squared distance to the light source relative to the light radius,
+ * which avoids any square root or division when evaluating the light level of a block.
+ * The table is linearly interpolated, so the falloff stays monotonic and the light keeps a smooth gradient.
+ *
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+public enum DynamicLightFalloff {
+	/**
+	 * The light level decreases linearly with the distance.
+	 */
+	LINEAR(distance -> 1.0 - distance),
+	/**
+	 * The light level decreases quickly close to the light source, and fades out slowly.
+	 */
+	QUADRATIC(distance -> (1.0 - distance) * (1.0 - distance)),
+	/**
+	 * The light level stays bright close to the light source, and fades out smoothly at the edge of the light radius.
+	 */
+	SMOOTHSTEP(distance -> 1.0 - distance * distance * (3.0 - 2.0 * distance));
+
+	private static final int TABLE_SIZE = 1 << 14;
+	// The lightmap stores light levels with a precision of a sixteenth of a light level, anything dimmer does not show.
+	private static final double VISIBLE_LIGHT_LEVEL = 1.0 / 16.0;
+
+	// Multiplier by quantized squared distance, the last two entries are past the light radius.
+	private final float[] table = new float[TABLE_SIZE + 2];
+	// Reach relative to the light radius, by luminance.
+	private final double[] reach = new double[DynamicLightingEngine.MAX_LUMINANCE + 1];
+	// Steepest decrease of the multiplier per distance relative to the light radius.
+	private final double maxSlope;
+	// Each chunk builder thread has its own kernels, so stamping them never locks.
+	private final ThreadLocal<LightKernelCache> kernels = ThreadLocal.withInitial(() -> new LightKernelCache(this));
+
+	/**
+	 * @param curve the multiplier of the light level, from the distance to the light source relative to the light radius
+	 */
+	DynamicLightFalloff(@NotNull DoubleUnaryOperator curve) {
+		for (int i = 0; i <= TABLE_SIZE; i++) {
+			double distance = Math.sqrt((double) i / TABLE_SIZE);
+			this.table[i] = (float) MathHelper.clamp(curve.applyAsDouble(distance), 0.0, 1.0);
+		}
+
+		double maxSlope = 0.0;
+		for (int i = 0; i < TABLE_SIZE; i++) {
+			double step = Math.sqrt((double) (i + 1) / TABLE_SIZE) - Math.sqrt((double) i / TABLE_SIZE);
+			maxSlope = Math.max(maxSlope, (this.table[i] - this.table[i + 1]) / step);
+		}
+		this.maxSlope = maxSlope;
+
+		// The table never increases, the reach is right past the last entry bright enough to show, and shrinks with the luminance.
+		int index = TABLE_SIZE;
+		for (int luminance = DynamicLightingEngine.MAX_LUMINANCE; luminance > 0; luminance--) {
+			while (index > 0 && this.table[index - 1] * luminance < VISIBLE_LIGHT_LEVEL) {
+				index--;
+			}
+
+			this.reach[luminance] = Math.sqrt((double) index / TABLE_SIZE);
+		}
+	}
+
+	/**
+	 * Returns the multiplier of the light level at the given squared distance to a light source.
+	 * <p>
+	 * The distance is relative to the light radius, the multiplier is {@code 0} at and past {@code 1}.
+	 *
+	 * @param distanceSquared the squared distance to the light source, divided by the squared light radius
+	 * @return the multiplier of the light level, between {@code 0} and {@code 1}
+	 */
+	public double getMultiplier(double distanceSquared) {
+		double position = Math.min(distanceSquared * TABLE_SIZE, TABLE_SIZE);
+		int index = (int) position;
+		float low = this.table[index];
+
+		return low + (this.table[index + 1] - low) * (position - index);
+	}
+
+	/**
+	 * Returns the reach of a light source of the given luminance, relative to its light radius.
+	 * <p>
+	 * Past its reach, a light source is too dim to change the lightmap. Dim light sources fade out before their light radius,
+	 * especially with curves which fade out quickly.
+	 *
+	 * @param luminance the luminance of the light source
+	 * @return the reach of the light source, between {@code 0} and {@code 1}
+	 */
+	public double getReach(int luminance) {
+		return this.reach[MathHelper.clamp(luminance, 0, DynamicLightingEngine.MAX_LUMINANCE)];
+	}
+
+	/**
+	 * {@return the steepest decrease of the multiplier per unit of distance relative to the light radius}
+	 * <p>
+	 * This bounds how much the multiplier of a block can change when a light source moves.
+	 */
+	double getMaxSlope() {
+		return this.maxSlope;
+	}
+
+	/**
+	 * Returns the precomputed light kernel of a light source at the given position within its block,
+	 * with at least the given box of blocks evaluated.
+	 *
+	 * @param radius the light radius of the light source
+	 * @param x the X coordinate of the light source within its block, between {@code 0} and {@code 1}
+	 * @param y the Y coordinate of the light source within its block, between {@code 0} and {@code 1}
+	 * @param z the Z coordinate of the light source within its block, between {@code 0} and {@code 1}
+	 * @param minX the X coordinate of the first block of the box in the kernel, inclusive
+	 * @param minY the Y coordinate of the first block of the box in the kernel, inclusive
+	 * @param minZ the Z coordinate of the first block of the box in the kernel, inclusive
+	 * @param maxX the X coordinate of the last block of the box in the kernel, inclusive
+	 * @param maxY the Y coordinate of the last block of the box in the kernel, inclusive
+	 * @param maxZ the Z coordinate of the last block of the box in the kernel, inclusive
+	 * @return the light kernel
+	 * @see LightKernelCache
+	 */
+	float[] getKernel(double radius, double x, double y, double z, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		return this.kernels.get().get(radius, x, y, z, minX, minY, minZ, maxX, maxY, maxZ);
+	}
+
+	/**
+	 * {@return the identifier of this falloff curve}
+	 */
+	public @NotNull String getName() {
+		return this.name().toLowerCase();
+	}
+
+	/**
+	 * Gets the falloff curve from its identifier.
+	 *
+	 * @param id the identifier of the falloff curve
+	 * @return the falloff curve if found, else empty
+	 */
+	public static @NotNull Optional<DynamicLightFalloff> byId(@NotNull String id) {
+		return Arrays.stream(values()).filter(falloff -> falloff.getName().equalsIgnoreCase(id)).findFirst();
+	}
+}
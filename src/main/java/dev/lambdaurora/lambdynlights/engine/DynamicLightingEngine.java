@@ -10,156 +10,993 @@
 package dev.lambdaurora.lambdynlights.engine;
 
 import dev.lambdaurora.lambdynlights.DynamicLightSource;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMaps;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceArrayList;
 import net.minecraft.core.BlockPos;
-import net.minecraft.core.Vec3i;
 import net.minecraft.util.math.MathHelper;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Represents the dynamic lighting engine.
  *
  * @author LambdAurora, Akarys
- * @version 3.1.0
+ * @version 3.3.0
  * @since 3.1.0
  */
 public final class DynamicLightingEngine {
-	private static final double MAX_RADIUS = 7.75;
-	private static final double MAX_RADIUS_SQUARED = MAX_RADIUS * MAX_RADIUS;
-	private static final int CELL_SIZE = MathHelper.ceil(MAX_RADIUS);
-	public static final int MAX_LIGHT_SOURCES = 1024;
-	private static final Vec3i[] CELL_OFFSETS;
+	// 7.75 because else we would have to update more chunks and that's not a good idea.
+	// 15 (max range for blocks) would be too much and a bit cheaty by default.
+	/**
+	 * The default radius of the light emitted by a light source, in blocks.
+	 */
+	public static final double DEFAULT_RADIUS = 7.75;
+	/**
+	 * The maximum radius of the light emitted by a light source, in blocks.
+	 */
+	public static final double MAX_RADIUS = 15.0;
+	static final int MAX_LUMINANCE = 15;
+	/**
+	 * The number of blocks in a chunk section.
+	 */
+	public static final int SECTION_VOLUME = 16 * 16 * 16;
+	// Cells are sized after the default light radius, a light source is indexed in every cell its light reaches.
+	static final int CELL_SIZE = MathHelper.ceil(DEFAULT_RADIUS);
+	/**
+	 * The number of cells in a chunk section, on each axis.
+	 */
+	static final int SECTION_CELLS = 16 / CELL_SIZE;
+	public static final int DEFAULT_MAX_LIGHT_SOURCES = 4096;
+	public static final int MAX_LIGHT_SOURCES_LIMIT = 65536;
+	private static final int MIN_CAPACITY = 64;
+	// Number of consecutive computations using less than a quarter of the capacity before shrinking it.
+	private static final int SHRINK_DELAY = 200;
+	// Distance a light source has to move on an axis before its indexed position is updated, this absorbs small jitter.
+	private static final double MOVE_THRESHOLD = 1.0 / 32.0;
+	// Distance the camera has to move on an axis before the light sources to index are selected again.
+	private static final double SELECTION_CAMERA_THRESHOLD = 1.0;
+	// Shared by every engine, so generations are never reused even across levels.
+	private static final AtomicInteger LAST_SECTION_GENERATION = new AtomicInteger();
 
-	private final SpatialLookupEntry[] spatialLookupEntries = new SpatialLookupEntry[MAX_LIGHT_SOURCES];
-	private final int[] startIndices = new int[MAX_LIGHT_SOURCES];
+	private volatile SpatialLookup spatialLookup = SpatialLookup.EMPTY;
+	// Spatial lookup published before the current one, its storage is recycled by the next computation if nothing reads it.
+	private SpatialLookup previousLookup = SpatialLookup.EMPTY;
+	private DynamicLightFalloff falloff = DynamicLightFalloff.LINEAR;
+	private boolean occlusion = false;
+	// Light volume of each light source, only used with occlusion.
+	private final Reference2ObjectOpenHashMap<DynamicLightSource, LightVolume> lightVolumes = new Reference2ObjectOpenHashMap<>();
+	// Packed coordinates of the blocks changed since the light volumes were last checked.
+	private final LongOpenHashSet changedBlocks = new LongOpenHashSet();
+	// Light sources whose light volume may be changed by a block of each chunk section, only filled while checking changed blocks.
+	private final Long2ObjectOpenHashMap<ReferenceArrayList<DynamicLightSource>> lightVolumesBySection = new Long2ObjectOpenHashMap<>();
+	// Flood queue reused by every light volume computation.
+	private int[] floodQueue = new int[0];
+	private long lastLightVolumeId = 0;
+	// Indexed state of each light source of the last computed spatial lookup.
+	private final Reference2ObjectOpenHashMap<DynamicLightSource, IndexedLightSource> indexedSources = new Reference2ObjectOpenHashMap<>();
+	private long computations = 0;
+	private int lastMaxLightSources = -1;
+	// Position of the camera the indexed light sources were last selected from, when there are too many light sources.
+	private double selectionCameraX;
+	private double selectionCameraY;
+	private double selectionCameraZ;
+	// Whether the next computation must publish a new spatial lookup even if no light source changed.
+	private boolean indexInvalidated = false;
+	// Light sources collected during a computation, in collection order.
+	private double[] collectedX;
+	private double[] collectedY;
+	private double[] collectedZ;
+	private int[] collectedLuminance;
+	private double[] collectedRadius;
+	private boolean[] collectedMoving;
+	private LightVolume[] collectedVolumes;
+	private IndexedLightSource[] collectedIndexed;
+	// Entries of the spatial lookup, each entry being a collected light source in one of the cells its light reaches.
+	private int[] entrySources;
+	private long[] entryCells;
+	private int[] entrySlots;
+	// Cells of the entries while they are sorted, sized after the number of entries.
+	private CellLookupTable entryCellTable;
+	private CellLookupTable.Buffers cellBuffers;
+	// Priority of each collected light source when there are more light sources than can be indexed, lower is better.
+	private double[] priorities;
+	// Indices of the collected light sources to index, in priority order if needed.
+	private int[] order;
+	// Indices of the light sources to index, by decreasing luminance.
+	private int[] luminanceOrder;
+	private final int[] luminanceOffsets = new int[MAX_LUMINANCE + 1];
+	// Combined state of the light sources reaching each lit chunk section, for the current and previous computations.
+	private Long2LongOpenHashMap sectionStates = new Long2LongOpenHashMap();
+	private Long2LongOpenHashMap previousSectionStates = new Long2LongOpenHashMap();
+	private int underusedComputations = 0;
+
+	public DynamicLightingEngine() {
+		this.resize(MIN_CAPACITY);
+	}
 
 	/**
 	 * Returns the dynamic light level at the specified position.
 	 *
 	 * @param pos the position
 	 * @return the dynamic light level at the specified position
+	 * @see SpatialLookup#getDynamicLightLevel(BlockPos)
 	 */
 	public double getDynamicLightLevel(@NotNull BlockPos pos) {
-		double result = 0;
+		SpatialLookup lookup;
+		double lightLevel;
 
-		var currentCell = new BlockPos.Mutable(
-				this.positionToCell(pos.getX()),
-				this.positionToCell(pos.getY()),
-				this.positionToCell(pos.getZ())
-		);
-		var cell = currentCell.immutable();
+		// The spatial lookup is only recycled during the query if the query took longer than a computation.
+		do {
+			lookup = this.spatialLookup;
+			lightLevel = lookup.getDynamicLightLevel(pos);
+		} while (lookup.isRetired());
+
+		return lightLevel;
+	}
+
+	/**
+	 * {@return the last published spatial lookup of this engine}
+	 * <p>
+	 * The returned spatial lookup is immutable, and may be held by the caller to get a consistent lighting state
+	 * across multiple queries, until it is {@linkplain SpatialLookup#isRetired() retired}.
+	 */
+	public @NotNull SpatialLookup getSpatialLookup() {
+		return this.spatialLookup;
+	}
+
+	/**
+	 * {@return the falloff curve of the light sources of the next computed spatial lookups}
+	 */
+	public @NotNull DynamicLightFalloff getFalloff() {
+		return this.falloff;
+	}
+
+	/**
+	 * Sets the falloff curve of the light sources of the next computed spatial lookups.
+	 * <p>
+	 * Changing the falloff curve changes every lit chunk section, including the chunk sections only lit with the previous
+	 * or the new falloff curve, which are not rebuilt by this engine.
+	 *
+	 * @param falloff the falloff curve
+	 */
+	public void setFalloff(@NotNull DynamicLightFalloff falloff) {
+		if (this.falloff != falloff) {
+			this.falloff = falloff;
+			// Every lit chunk section changes with the falloff curve.
+			this.previousSectionStates.clear();
+			this.indexInvalidated = true;
+		}
+	}
+
+	/**
+	 * {@return {@code true} if the light of the next computed spatial lookups is blocked by opaque blocks, or {@code false} otherwise}
+	 */
+	public boolean hasOcclusion() {
+		return this.occlusion;
+	}
 
-		for (var cellOffset : CELL_OFFSETS) {
-			currentCell.setWithOffset(cell, cellOffset);
+	/**
+	 * Sets whether the light of the next computed spatial lookups is blocked by opaque blocks.
+	 * <p>
+	 * Like the falloff curve, changing the occlusion changes every lit chunk section, which are not rebuilt by this engine.
+	 *
+	 * @param occlusion {@code true} to flood the light through non-opaque blocks only, or {@code false} to light through every block
+	 */
+	public void setOcclusion(boolean occlusion) {
+		if (this.occlusion != occlusion) {
+			this.occlusion = occlusion;
+			this.lightVolumes.clear();
+			this.changedBlocks.clear();
+			// Every lit chunk section changes with the occlusion.
+			this.previousSectionStates.clear();
+			this.indexInvalidated = true;
+		}
+	}
 
-			int key = this.getHashFromKey(this.hashCell(currentCell.getX(), currentCell.getY(), currentCell.getZ()));
-			int startIndex = this.startIndices[key];
+	/**
+	 * Returns the light volume of the given light source, flooding the light from its block if needed.
+	 * <p>
+	 * The light volume of a light source is cached, and is only flooded again once the light source moves to another block,
+	 * its light radius changes, or a block the light volume may reach changes.
+	 *
+	 * @param lightSource the light source
+	 * @return the light volume of the light source
+	 */
+	public @NotNull LightVolume getLightVolume(@NotNull DynamicLightSource lightSource) {
+		this.invalidateChangedLightVolumes();
 
-			for (int i = startIndex; i < this.spatialLookupEntries.length; i++) {
-				SpatialLookupEntry entry = this.spatialLookupEntries[i];
-				if (entry == null || entry.cellKey() != key) break;
+		int x = MathHelper.floor(lightSource.getDynamicLightX());
+		int y = MathHelper.floor(lightSource.getDynamicLightY());
+		int z = MathHelper.floor(lightSource.getDynamicLightZ());
+		double radius = clampRadius(lightSource.getDynamicLightRadius());
 
-				result = maxDynamicLightLevel(pos, entry.source(), result);
+		var volume = this.lightVolumes.get(lightSource);
+		if (volume == null || !volume.isOrigin(x, y, z) || volume.radius() != radius) {
+			int capacity = LightVolume.capacity(radius);
+			if (this.floodQueue.length < capacity) {
+				this.floodQueue = new int[capacity];
 			}
+
+			volume = LightVolume.compute(++this.lastLightVolumeId, lightSource.getDynamicLightLevel(), x, y, z, radius, this.floodQueue);
+			this.lightVolumes.put(lightSource, volume);
 		}
 
-		return MathHelper.clamp(result, 0, 15);
+		return volume;
 	}
 
 	/**
-	 * Returns the dynamic light level generated by the light source at the specified position.
+	 * {@return the packed coordinates of the origin chunk section of the {@linkplain #getLitSectionMask(DynamicLightSource) lit chunk sections}
+	 * of the given light source}
 	 *
-	 * @param pos the position
 	 * @param lightSource the light source
-	 * @param currentLightLevel the current surrounding dynamic light level
-	 * @return the dynamic light level at the specified position
 	 */
-	public static double maxDynamicLightLevel(@NotNull BlockPos pos, @NotNull DynamicLightSource lightSource, double currentLightLevel) {
-		int luminance = lightSource.getLuminance();
-		if (luminance > 0) {
-			// Can't use Entity#squaredDistanceTo because of eye Y coordinate.
-			double dx = pos.getX() - lightSource.getDynamicLightX() + 0.5;
-			double dy = pos.getY() - lightSource.getDynamicLightY() + 0.5;
-			double dz = pos.getZ() - lightSource.getDynamicLightZ() + 0.5;
-
-			double distanceSquared = dx * dx + dy * dy + dz * dz;
-			// 7.75 because else we would have to update more chunks and that's not a good idea.
-			// 15 (max range for blocks) would be too much and a bit cheaty.
-			if (distanceSquared <= MAX_RADIUS_SQUARED) {
-				double multiplier = 1.0 - Math.sqrt(distanceSquared) / MAX_RADIUS;
-				double lightLevel = multiplier * (double) luminance;
-				if (lightLevel > currentLightLevel) {
-					return lightLevel;
+	public long getLitSectionOrigin(@NotNull DynamicLightSource lightSource) {
+		var indexed = this.indexedSources.get(lightSource);
+		return indexed == null ? 0L : indexed.sectionOrigin;
+	}
+
+	/**
+	 * Returns the chunk sections lit by the given light source in the last spatial lookup, as a {@link SectionMask}
+	 * relative to the {@linkplain #getLitSectionOrigin(DynamicLightSource) origin chunk section} of the light source.
+	 * <p>
+	 * The lit chunk sections come from the indexed state of the light source, which may lag slightly behind the light source,
+	 * so they are exactly the chunk sections the spatial lookup lights for it.
+	 *
+	 * @param lightSource the light source
+	 * @return the mask of the lit chunk sections, or {@link SectionMask#EMPTY} if the light source is not indexed
+	 */
+	public int getLitSectionMask(@NotNull DynamicLightSource lightSource) {
+		var indexed = this.indexedSources.get(lightSource);
+		return indexed == null ? SectionMask.EMPTY : indexed.sectionMask;
+	}
+
+	/**
+	 * Notifies this engine that the given block changed, which may change the light volumes around it.
+	 *
+	 * @param pos the position of the changed block
+	 */
+	public void onBlockChanged(@NotNull BlockPos pos) {
+		if (!this.lightVolumes.isEmpty()) {
+			this.changedBlocks.add(pos.asLong());
+		}
+	}
+
+	/**
+	 * Forgets the light volumes which may be changed by the blocks changed since the last check.
+	 * <p>
+	 * Light volumes are first indexed by the chunk sections a block change may affect them in,
+	 * so each changed block is only checked against the few light volumes around it.
+	 */
+	private void invalidateChangedLightVolumes() {
+		if (this.changedBlocks.isEmpty()) return;
+
+		for (var entry : Reference2ObjectMaps.fastIterable(this.lightVolumes)) {
+			var volume = entry.getValue();
+			int extent = volume.extent();
+			int minX = (volume.originX() - extent) >> 4;
+			int minY = (volume.originY() - extent) >> 4;
+			int minZ = (volume.originZ() - extent) >> 4;
+			int maxX = (volume.originX() + extent) >> 4;
+			int maxY = (volume.originY() + extent) >> 4;
+			int maxZ = (volume.originZ() + extent) >> 4;
+
+			for (int sectionX = minX; sectionX <= maxX; sectionX++) {
+				for (int sectionY = minY; sectionY <= maxY; sectionY++) {
+					for (int sectionZ = minZ; sectionZ <= maxZ; sectionZ++) {
+						long section = packSection(sectionX, sectionY, sectionZ);
+						var sources = this.lightVolumesBySection.get(section);
+						if (sources == null) {
+							sources = new ReferenceArrayList<>();
+							this.lightVolumesBySection.put(section, sources);
+						}
+						sources.add(entry.getKey());
+					}
 				}
 			}
 		}
-		return currentLightLevel;
+
+		for (long pos : this.changedBlocks) {
+			var sources = this.lightVolumesBySection.get(
+					packSection(BlockPos.unpackLongX(pos) >> 4, BlockPos.unpackLongY(pos) >> 4, BlockPos.unpackLongZ(pos) >> 4)
+			);
+			if (sources == null) continue;
+
+			for (int i = 0; i < sources.size(); i++) {
+				var source = sources.get(i);
+				var volume = this.lightVolumes.get(source);
+
+				if (volume != null && volume.isAffectedBy(pos)) {
+					this.lightVolumes.remove(source);
+				}
+			}
+		}
+
+		this.lightVolumesBySection.clear();
+		this.changedBlocks.clear();
 	}
 
-	private int positionToCell(int coord) {
-		return coord / CELL_SIZE;
+	/**
+	 * Fills the given buffer with the dynamic light levels of every block of the given chunk section.
+	 *
+	 * @param sectionX the X coordinate of the chunk section
+	 * @param sectionY the Y coordinate of the chunk section
+	 * @param sectionZ the Z coordinate of the chunk section
+	 * @param buffer the buffer of {@value #SECTION_VOLUME} light levels to fill
+	 * @return {@code true} if any block of the chunk section is lit, or {@code false} otherwise
+	 * @see SpatialLookup#fillSectionLightLevels(int, int, int, double[])
+	 */
+	public boolean fillSectionLightLevels(int sectionX, int sectionY, int sectionZ, double[] buffer) {
+		SpatialLookup lookup;
+
+		// A spatial lookup recycled before being acquired has been replaced by a newer one.
+		do {
+			lookup = this.spatialLookup;
+		} while (!lookup.tryAcquire());
+
+		try {
+			return lookup.fillSectionLightLevels(sectionX, sectionY, sectionZ, buffer);
+		} finally {
+			lookup.release();
+		}
 	}
 
-	private int hashCell(int cellX, int cellY, int cellZ) {
-		return Math.abs(cellX * 751 + cellY * 86399 + cellZ * 284593);
+	/**
+	 * Computes and publishes the spatial lookup of the given dynamic light sources.
+	 * <p>
+	 * The new spatial lookup is built aside while queries keep reading the previous one,
+	 * and is then published in a single step.
+	 * <p>
+	 * The engine keeps track of the indexed state of each light source. A light source only counts as changed once it is added,
+	 * removed, changes luminance, light radius or light volume, or moves further than a small threshold from its indexed position.
+	 * If no light source changed, the current spatial lookup is kept as is and nothing is rebuilt.
+	 * <p>
+	 * Light sources are grouped by cell, each cell being indexed by its exact coordinates.
+	 * A light source is added to every cell holding a block its light visibly reaches, whatever its light radius,
+	 * so a query only has to look at the cell of the queried block.
+	 * The grouping is a counting sort, which runs in linear time. Within a cell, light sources are sorted by decreasing luminance.
+	 * The position and luminance of each light source are copied once, so queries always see a consistent state
+	 * until the next computation.
+	 * <p>
+	 * The storage used to collect the light sources grows with their number, and shrinks back once it stays mostly unused.
+	 * <p>
+	 * If there are more light sources than can be indexed, the light sources closest to the camera are kept,
+	 * the distance being weighted by the luminance of each light source. The selection is kept while light sources only move
+	 * and the camera stays within a block of where it was selected from, so a stable scene over the limit is not rebuilt.
+	 * <p>
+	 * With {@linkplain #setOcclusion(boolean) occlusion}, each light source only lights the blocks of its {@linkplain LightVolume light volume}.
+	 *
+	 * @param dynamicLightSources the dynamic light sources to index
+	 * @param maxLightSources the maximum number of light sources to index
+	 * @param cameraX the X coordinate of the camera
+	 * @param cameraY the Y coordinate of the camera
+	 * @param cameraZ the Z coordinate of the camera
+	 */
+	public void computeSpatialLookup(
+			Collection<DynamicLightSource> dynamicLightSources, int maxLightSources,
+			double cameraX, double cameraY, double cameraZ
+	) {
+		this.ensureCapacity(dynamicLightSources.size());
+
+		if (this.occlusion) {
+			// Forget the light volumes of the removed light sources.
+			this.lightVolumes.keySet().retainAll(dynamicLightSources);
+		}
+
+		long computation = ++this.computations;
+		boolean changed = this.indexInvalidated;
+		// Whether the priority of the light sources changed, other than by moving.
+		boolean prioritiesChanged = false;
+		this.indexInvalidated = false;
+
+		int count = 0;
+		for (var source : dynamicLightSources) {
+			int luminance = Math.min(source.getLuminance(), MAX_LUMINANCE);
+			if (luminance <= 0) continue;
+			double radius = clampRadius(source.getDynamicLightRadius());
+			if (radius <= 0) continue;
+
+			var volume = this.occlusion ? this.getLightVolume(source) : null;
+			var indexed = this.indexedSources.get(source);
+
+			if (indexed == null) {
+				indexed = new IndexedLightSource();
+				this.indexedSources.put(source, indexed);
+				indexed.set(source.getDynamicLightX(), source.getDynamicLightY(), source.getDynamicLightZ(), luminance, radius, volume);
+				changed = true;
+				prioritiesChanged = true;
+			} else {
+				prioritiesChanged |= luminance != indexed.luminance;
+				changed |= indexed.update(
+						source.getDynamicLightX(), source.getDynamicLightY(), source.getDynamicLightZ(), luminance, radius, volume
+				);
+			}
+
+			indexed.lastComputation = computation;
+
+			double x = indexed.x;
+			double y = indexed.y;
+			double z = indexed.z;
+
+			this.collectedX[count] = x;
+			this.collectedY[count] = y;
+			this.collectedZ[count] = z;
+			this.collectedLuminance[count] = luminance;
+			this.collectedRadius[count] = radius;
+			this.collectedMoving[count] = indexed.moved;
+			this.collectedVolumes[count] = volume;
+			this.collectedIndexed[count] = indexed;
+
+			double dx = x - cameraX;
+			double dy = y - cameraY;
+			double dz = z - cameraZ;
+			this.priorities[count] = (dx * dx + dy * dy + dz * dz) / (luminance * luminance);
+			this.order[count] = count;
+
+			count++;
+		}
+
+		if (this.indexedSources.size() > count) {
+			// Forget the removed light sources.
+			this.indexedSources.values().removeIf(indexed -> indexed.lastComputation != computation);
+			changed = true;
+			prioritiesChanged = true;
+		}
+
+		// The selected light sources depend on the camera, they are kept until the camera or the light sources change enough.
+		boolean reselect = prioritiesChanged || maxLightSources != this.lastMaxLightSources
+				|| Math.abs(cameraX - this.selectionCameraX) > SELECTION_CAMERA_THRESHOLD
+				|| Math.abs(cameraY - this.selectionCameraY) > SELECTION_CAMERA_THRESHOLD
+				|| Math.abs(cameraZ - this.selectionCameraZ) > SELECTION_CAMERA_THRESHOLD;
+		changed |= maxLightSources != this.lastMaxLightSources || (count > maxLightSources && reselect);
+		this.lastMaxLightSources = maxLightSources;
+
+		if (!changed) return;
+
+		// The light sources which are not selected do not light any chunk section.
+		for (int i = 0; i < count; i++) {
+			this.collectedIndexed[i].sectionMask = SectionMask.EMPTY;
+		}
+
+		if (count > maxLightSources) {
+			if (reselect) {
+				this.selectPrioritizedEntries(count, maxLightSources);
+
+				for (int i = 0; i < count; i++) {
+					this.collectedIndexed[this.order[i]].selected = i < maxLightSources;
+				}
+
+				this.selectionCameraX = cameraX;
+				this.selectionCameraY = cameraY;
+				this.selectionCameraZ = cameraZ;
+				count = maxLightSources;
+			} else {
+				// Only the positions of the light sources changed, the light sources selected last time are kept.
+				int selected = 0;
+				for (int i = 0; i < count; i++) {
+					if (this.collectedIndexed[i].selected) {
+						this.order[selected++] = i;
+					}
+				}
+
+				count = selected;
+			}
+		}
+
+		if (count == 0) {
+			this.previousSectionStates.clear();
+			this.publish(SpatialLookup.EMPTY);
+			return;
+		}
+
+		this.sortByLuminance(count);
+
+		// Entries are added in luminance order, which the scatter keeps within each cell.
+		int entries = 0;
+		for (int i = 0; i < count; i++) {
+			int source = this.luminanceOrder[i];
+			entries = this.addCellEntries(source, entries);
+
+			this.addLitSections(source);
+		}
+
+		if (this.entryCellTable.fits(entries)) {
+			this.entryCellTable.clear();
+		} else {
+			this.entryCellTable = new CellLookupTable(entries);
+		}
+
+		this.cellBuffers.ensureCapacity(entries);
+
+		// Counting sort of the entries by cell: count the entries of each cell,
+		// compute the range of each cell, then scatter the entries into their range.
+		for (int i = 0; i < entries; i++) {
+			this.entrySlots[i] = this.entryCellTable.add(this.entryCells[i], this.cellBuffers);
+		}
+
+		this.entryCellTable.computeRanges(this.cellBuffers);
+
+		var storage = this.recycleStorage(this.entryCellTable.size(), entries);
+
+		for (int i = 0; i < entries; i++) {
+			int source = this.entrySources[i];
+			int index = this.entryCellTable.claim(this.entrySlots[i]);
+
+			storage.sourceX[index] = this.collectedX[source];
+			storage.sourceY[index] = this.collectedY[source];
+			storage.sourceZ[index] = this.collectedZ[source];
+			storage.sourceLuminance[index] = this.collectedLuminance[source];
+			storage.sourceRadius[index] = this.collectedRadius[source];
+			storage.sourceMoving[index] = this.collectedMoving[source];
+			storage.sourceVolumes[index] = this.collectedVolumes[source];
+		}
+
+		// The published table is sized after the number of cells, which is usually much lower than the number of entries.
+		this.entryCellTable.copyTo(storage.cells, this.cellBuffers);
+
+		this.publish(new SpatialLookup(this.falloff, storage, entries, this.computeSectionGenerations(), this.occlusion));
+	}
+
+	/**
+	 * Returns a storage fitting the given number of cells and entries, ready to be filled.
+	 * <p>
+	 * The storage of the spatial lookup published before the current one is recycled, unless something still reads it
+	 * or it does not fit, in which case a new storage is allocated.
+	 *
+	 * @param cells the number of cells
+	 * @param entries the number of entries
+	 * @return the storage
+	 */
+	private SpatialLookup.Storage recycleStorage(int cells, int entries) {
+		var storage = this.previousLookup.getStorage();
+
+		if (storage.fits(cells, entries) && this.previousLookup.tryRetire()) {
+			storage.clear(entries);
+			return storage;
+		}
+
+		storage = new SpatialLookup.Storage(cells, entries);
+		storage.clear(entries);
+		return storage;
 	}
 
-	private int getHashFromKey(int hash) {
-		return hash % MAX_LIGHT_SOURCES;
+	private void publish(SpatialLookup lookup) {
+		this.previousLookup = this.spatialLookup;
+		this.spatialLookup = lookup;
 	}
 
-	public void computeSpatialLookup(Collection<DynamicLightSource> dynamicLightSources) {
-		Arrays.fill(this.spatialLookupEntries, null);
-		Arrays.fill(this.startIndices, Integer.MAX_VALUE);
+	/**
+	 * Adds an entry of the given collected light source in every cell holding a block its light visibly reaches.
+	 *
+	 * @param source the index of the collected light source
+	 * @param entries the current number of entries
+	 * @return the new number of entries
+	 */
+	private int addCellEntries(int source, int entries) {
+		double x = this.collectedX[source];
+		double y = this.collectedY[source];
+		double z = this.collectedZ[source];
+		// Past its reach the light source does not change the lightmap, so it does not need to be indexed there.
+		double radius = this.collectedRadius[source] * this.falloff.getReach(this.collectedLuminance[source]);
+		double radiusSquared = radius * radius;
+		var volume = this.collectedVolumes[source];
+
+		int minX = positionToCell(MathHelper.ceil(x - radius - 0.5));
+		int minY = positionToCell(MathHelper.ceil(y - radius - 0.5));
+		int minZ = positionToCell(MathHelper.ceil(z - radius - 0.5));
+		int maxX = positionToCell(MathHelper.floor(x + radius - 0.5));
+		int maxY = positionToCell(MathHelper.floor(y + radius - 0.5));
+		int maxZ = positionToCell(MathHelper.floor(z + radius - 0.5));
 
-		int i = 0;
-		for (var source : dynamicLightSources) {
-			int x = (int) source.getDynamicLightX();
-			int y = (int) source.getDynamicLightY();
-			int z = (int) source.getDynamicLightZ();
-
-			int cellKey = this.getHashFromKey(
-					this.hashCell(
-							this.positionToCell(x),
-							this.positionToCell(y),
-							this.positionToCell(z)
-					)
-			);
+		for (int cellX = minX; cellX <= maxX; cellX++) {
+			double distanceX = distanceSquaredToCenters(x, cellX * CELL_SIZE, CELL_SIZE);
+
+			for (int cellY = minY; cellY <= maxY; cellY++) {
+				double distanceXY = distanceX + distanceSquaredToCenters(y, cellY * CELL_SIZE, CELL_SIZE);
+				if (distanceXY > radiusSquared) continue;
 
-			this.spatialLookupEntries[i] = new SpatialLookupEntry(cellKey, source);
+				for (int cellZ = minZ; cellZ <= maxZ; cellZ++) {
+					// The corners of the range may be out of the light sphere.
+					if (distanceXY + distanceSquaredToCenters(z, cellZ * CELL_SIZE, CELL_SIZE) > radiusSquared) continue;
+					// An occluded light never reaches the cells of the chunk sections it does not flood into.
+					if (volume != null && !volume.reachesSection(packSection(
+							Math.floorDiv(cellX, SECTION_CELLS), Math.floorDiv(cellY, SECTION_CELLS), Math.floorDiv(cellZ, SECTION_CELLS)
+					))) continue;
 
-			i++;
-			if (i == MAX_LIGHT_SOURCES) break;
+					if (entries == this.entryCells.length) {
+						this.growEntries();
+					}
+
+					this.entrySources[entries] = source;
+					this.entryCells[entries] = packCell(cellX, cellY, cellZ);
+					entries++;
+				}
+			}
 		}
 
-		Arrays.sort(this.spatialLookupEntries, Comparator.comparingInt(entry -> entry == null ? Integer.MAX_VALUE : entry.cellKey()));
+		return entries;
+	}
+
+	private void growEntries() {
+		int capacity = this.entryCells.length * 2;
+		this.entrySources = Arrays.copyOf(this.entrySources, capacity);
+		this.entryCells = Arrays.copyOf(this.entryCells, capacity);
+		this.entrySlots = new int[capacity];
+	}
+
+	/**
+	 * Returns the chunk sections containing a block reached by a light source of the given radius, as a {@link SectionMask}.
+	 * <p>
+	 * A block is reached if its center is within the light radius.
+	 *
+	 * @param x the X coordinate of the light source
+	 * @param y the Y coordinate of the light source
+	 * @param z the Z coordinate of the light source
+	 * @param radius the light radius of the light source
+	 * @return the mask of the reached chunk sections, relative to the {@linkplain SectionMask#origin(double, double, double) chunk section}
+	 * of the light source
+	 */
+	public static int getReachedSectionMask(double x, double y, double z, double radius) {
+		radius = clampRadius(radius);
+		if (radius <= 0) return SectionMask.EMPTY;
+
+		double radiusSquared = radius * radius;
+		int originX = MathHelper.floor(x) >> 4;
+		int originY = MathHelper.floor(y) >> 4;
+		int originZ = MathHelper.floor(z) >> 4;
+		int mask = SectionMask.EMPTY;
+
+		for (int dy = -1; dy <= 1; dy++) {
+			double distanceY = distanceSquaredToCenters(y, (originY + dy) << 4, 16);
+			if (distanceY > radiusSquared) continue;
 
-		for (i = 0; i < MAX_LIGHT_SOURCES; i++) {
-			if (this.spatialLookupEntries[i] == null) break;
+			for (int dz = -1; dz <= 1; dz++) {
+				double distanceYZ = distanceY + distanceSquaredToCenters(z, (originZ + dz) << 4, 16);
+				if (distanceYZ > radiusSquared) continue;
 
-			int key = this.spatialLookupEntries[i].cellKey();
-			int previousKey = i == 0 ? Integer.MAX_VALUE : this.spatialLookupEntries[i - 1].cellKey();
+				for (int dx = -1; dx <= 1; dx++) {
+					if (distanceYZ + distanceSquaredToCenters(x, (originX + dx) << 4, 16) > radiusSquared) continue;
 
-			if (key != previousKey) {
-				this.startIndices[key] = i;
+					mask |= SectionMask.bit(dx, dy, dz);
+				}
 			}
 		}
+
+		return mask;
+	}
+
+	/**
+	 * Returns the distance past which a light source is too dim to change the lightmap.
+	 * <p>
+	 * The reach radius is at most the light radius, and shrinks with the luminance of the light source.
+	 *
+	 * @param falloff the falloff curve of the light
+	 * @param radius the light radius of the light source
+	 * @param luminance the luminance of the light source
+	 * @return the reach radius of the light source
+	 * @see DynamicLightFalloff#getReach(int)
+	 */
+	public static double getReachRadius(@NotNull DynamicLightFalloff falloff, double radius, int luminance) {
+		return clampRadius(radius) * falloff.getReach(luminance);
+	}
+
+	/**
+	 * {@return the squared distance on one axis between the given coordinate and the nearest block center of a range of blocks}
+	 *
+	 * @param coord the coordinate
+	 * @param min the first block of the range
+	 * @param length the number of blocks in the range
+	 */
+	private static double distanceSquaredToCenters(double coord, int min, int length) {
+		// The nearest block center is the center of the block of the coordinate, clamped to the range.
+		double distance = coord - MathHelper.clamp(MathHelper.floor(coord) + 0.5, min + 0.5, min + length - 0.5);
+		return distance * distance;
+	}
+
+	/**
+	 * {@return the given light radius, capped to {@value #MAX_RADIUS}}
+	 * <p>
+	 * The light radius is rounded to single precision, which is the precision light kernels are cached with.
+	 *
+	 * @param radius the light radius
+	 */
+	static double clampRadius(double radius) {
+		return (float) Math.min(radius, MAX_RADIUS);
+	}
+
+	/**
+	 * Partially reorders the collected light sources so that the given number of light sources with the best priority come first.
+	 *
+	 * @param count the number of collected light sources
+	 * @param selected the number of light sources to select
+	 * @see #selectPrioritized(int[], double[], int, int, int)
+	 */
+	private void selectPrioritizedEntries(int count, int selected) {
+		selectPrioritized(this.order, this.priorities, 0, count, selected);
 	}
 
-	static {
-		CELL_OFFSETS = new Vec3i[27];
-		int i = 0;
+	/**
+	 * Partially reorders a range of entries so that the entries with the best priority come first, up to the given index.
+	 * <p>
+	 * This is a quickselect using a three-way partition, which runs in linear time on average
+	 * and stays fast when a lot of entries share the same priority.
+	 *
+	 * @param order the indices of the entries to reorder
+	 * @param priorities the priority of each entry by index, lower is better
+	 * @param from the index of the first entry of the range, inclusive
+	 * @param to the index of the last entry of the range, exclusive
+	 * @param selected the index before which the selected entries are moved, between {@code from} and {@code to}
+	 */
+	static void selectPrioritized(int[] order, double[] priorities, int from, int to, int selected) {
+		int left = from;
+		int right = to - 1;
+
+		while (left < right) {
+			double pivot = priorities[order[(left + right) >>> 1]];
+			int lower = left;
+			int greater = right;
+			int i = left;
 
-		for (int x = -1; x <= 1; x++) {
-			for (int y = -1; y <= 1; y++) {
-				for (int z = -1; z <= 1; z++) {
-					CELL_OFFSETS[i] = new Vec3i(x, y, z);
+			while (i <= greater) {
+				double priority = priorities[order[i]];
+
+				if (priority < pivot) {
+					swap(order, lower++, i++);
+				} else if (priority > pivot) {
+					swap(order, i, greater--);
+				} else {
 					i++;
 				}
 			}
+
+			// Entries in [lower, greater] all have the pivot priority, they can be cut anywhere.
+			if (selected < lower) {
+				right = lower - 1;
+			} else if (selected > greater + 1) {
+				left = greater + 1;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private static void swap(int[] order, int a, int b) {
+		int entry = order[a];
+		order[a] = order[b];
+		order[b] = entry;
+	}
+
+	/**
+	 * Sorts the light sources to index by decreasing luminance, using a counting sort.
+	 *
+	 * @param count the number of light sources to index
+	 */
+	private void sortByLuminance(int count) {
+		Arrays.fill(this.luminanceOffsets, 0);
+
+		for (int i = 0; i < count; i++) {
+			this.luminanceOffsets[MAX_LUMINANCE - this.collectedLuminance[this.order[i]]]++;
+		}
+
+		int offset = 0;
+		for (int i = 0; i < this.luminanceOffsets.length; i++) {
+			int luminanceCount = this.luminanceOffsets[i];
+			this.luminanceOffsets[i] = offset;
+			offset += luminanceCount;
+		}
+
+		for (int i = 0; i < count; i++) {
+			int entry = this.order[i];
+			this.luminanceOrder[this.luminanceOffsets[MAX_LUMINANCE - this.collectedLuminance[entry]]++] = entry;
+		}
+	}
+
+	/**
+	 * Adds the state of the given collected light source to every chunk section containing a block it visibly reaches,
+	 * and records those chunk sections as the lit chunk sections of the light source.
+	 *
+	 * @param source the index of the collected light source
+	 */
+	private void addLitSections(int source) {
+		double x = this.collectedX[source];
+		double y = this.collectedY[source];
+		double z = this.collectedZ[source];
+		int luminance = this.collectedLuminance[source];
+		double radius = this.collectedRadius[source];
+		var volume = this.collectedVolumes[source];
+
+		long state = HashCommon.mix(
+				HashCommon.mix(Double.doubleToLongBits(x))
+						^ HashCommon.mix(Double.doubleToLongBits(y) + 1)
+						^ HashCommon.mix(Double.doubleToLongBits(z) + 2)
+						^ HashCommon.mix((volume == null ? 0 : volume.id()) + 3)
+						^ HashCommon.mix(Double.doubleToLongBits(radius) + 4)
+						^ luminance
+		);
+
+		long origin;
+		int sections;
+		if (volume != null) {
+			// The light only reaches the chunk sections it floods into.
+			origin = volume.sectionOrigin();
+			sections = volume.sectionMask();
+		} else {
+			origin = SectionMask.origin(x, y, z);
+			sections = getReachedSectionMask(x, y, z, getReachRadius(this.falloff, radius, luminance));
+		}
+
+		var indexed = this.collectedIndexed[source];
+		indexed.sectionOrigin = origin;
+		indexed.sectionMask = sections;
+
+		// Order-independent combination of the states of the light sources.
+		for (; sections != SectionMask.EMPTY; sections &= sections - 1) {
+			this.sectionStates.addTo(SectionMask.section(origin, Integer.numberOfTrailingZeros(sections)), state);
+		}
+	}
+
+	/**
+	 * Computes the generation of each lit chunk section.
+	 * <p>
+	 * A chunk section keeps its generation as long as the light sources reaching it do not change,
+	 * otherwise it is given a new generation which was never used before.
+	 *
+	 * @return the generation of each lit chunk section
+	 */
+	private Long2IntOpenHashMap computeSectionGenerations() {
+		var previousGenerations = this.spatialLookup.getSectionGenerations();
+		var generations = new Long2IntOpenHashMap(this.sectionStates.size());
+
+		for (var entry : this.sectionStates.long2LongEntrySet()) {
+			long section = entry.getLongKey();
+			int generation = previousGenerations.get(section);
+
+			if (generation == 0 || !this.previousSectionStates.containsKey(section)
+					|| this.previousSectionStates.get(section) != entry.getLongValue()) {
+				generation = LAST_SECTION_GENERATION.incrementAndGet();
+			}
+
+			generations.put(section, generation);
+		}
+
+		var states = this.previousSectionStates;
+		this.previousSectionStates = this.sectionStates;
+		this.sectionStates = states;
+		this.sectionStates.clear();
+
+		return generations;
+	}
+
+	/**
+	 * Grows or shrinks the storage used to collect light sources to fit the given number of light sources.
+	 *
+	 * @param count the number of light sources to fit
+	 */
+	private void ensureCapacity(int count) {
+		int capacity = this.collectedX.length;
+
+		if (count > capacity) {
+			this.resize(HashCommon.nextPowerOfTwo(count));
+		} else if (capacity > MIN_CAPACITY && count < capacity / 4) {
+			this.underusedComputations++;
+
+			if (this.underusedComputations >= SHRINK_DELAY) {
+				this.resize(Math.max(MIN_CAPACITY, HashCommon.nextPowerOfTwo(count * 2)));
+			}
+		} else {
+			this.underusedComputations = 0;
+		}
+	}
+
+	private void resize(int capacity) {
+		this.collectedX = new double[capacity];
+		this.collectedY = new double[capacity];
+		this.collectedZ = new double[capacity];
+		this.collectedLuminance = new int[capacity];
+		this.collectedRadius = new double[capacity];
+		this.collectedMoving = new boolean[capacity];
+		this.collectedVolumes = new LightVolume[capacity];
+		this.collectedIndexed = new IndexedLightSource[capacity];
+		// A light source with the default light radius reaches up to 27 cells, usually less.
+		this.entrySources = new int[capacity * 8];
+		this.entryCells = new long[capacity * 8];
+		this.entrySlots = new int[capacity * 8];
+		this.entryCellTable = new CellLookupTable(capacity * 8);
+		this.cellBuffers = new CellLookupTable.Buffers();
+		this.priorities = new double[capacity];
+		this.order = new int[capacity];
+		this.luminanceOrder = new int[capacity];
+		this.underusedComputations = 0;
+	}
+
+	/**
+	 * {@return the coordinate of the cell containing the given block coordinate}
+	 * <p>
+	 * This rounds towards negative infinity so that cells on both sides of {@code 0} have the same size.
+	 *
+	 * @param coord the block coordinate
+	 */
+	static int positionToCell(int coord) {
+		return Math.floorDiv(coord, CELL_SIZE);
+	}
+
+	/**
+	 * {@return the packed coordinates of the given cell}
+	 *
+	 * @param cellX the X coordinate of the cell
+	 * @param cellY the Y coordinate of the cell
+	 * @param cellZ the Z coordinate of the cell
+	 */
+	static long packCell(int cellX, int cellY, int cellZ) {
+		return BlockPos.asLong(cellX, cellY, cellZ);
+	}
+
+	/**
+	 * {@return the packed coordinates of the given chunk section}
+	 *
+	 * @param sectionX the X coordinate of the chunk section
+	 * @param sectionY the Y coordinate of the chunk section
+	 * @param sectionZ the Z coordinate of the chunk section
+	 */
+	static long packSection(int sectionX, int sectionY, int sectionZ) {
+		return BlockPos.asLong(sectionX, sectionY, sectionZ);
+	}
+
+	/**
+	 * Represents the state of a light source as it is indexed.
+	 */
+	private static final class IndexedLightSource {
+		private double x;
+		private double y;
+		private double z;
+		private int luminance;
+		private double radius;
+		private LightVolume volume;
+		// Whether the light source was added or moved during the last computation.
+		private boolean moved;
+		// Chunk sections lit by the light source in the last spatial lookup.
+		private long sectionOrigin;
+		private int sectionMask = SectionMask.EMPTY;
+		// Whether the light source was selected the last time there were too many light sources to index.
+		private boolean selected;
+		private long lastComputation;
+
+		void set(double x, double y, double z, int luminance, double radius, LightVolume volume) {
+			this.moved = true;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.luminance = luminance;
+			this.radius = radius;
+			this.volume = volume;
+		}
+
+		/**
+		 * Updates the indexed state of the light source.
+		 *
+		 * @return {@code true} if the indexed state changed, or {@code false} otherwise
+		 */
+		boolean update(double x, double y, double z, int luminance, double radius, LightVolume volume) {
+			boolean moved = Math.abs(x - this.x) > MOVE_THRESHOLD || Math.abs(y - this.y) > MOVE_THRESHOLD
+					|| Math.abs(z - this.z) > MOVE_THRESHOLD;
+
+			if (moved || luminance != this.luminance || radius != this.radius || volume != this.volume) {
+				this.set(x, y, z, luminance, radius, volume);
+				this.moved = moved;
+				return true;
+			}
+
+			this.moved = false;
+			return false;
 		}
 	}
 }
@@ -0,0 +1,213 @@
+/*
+ * Copyright © 2026 LambdAurora <email@lambdaurora.dev>
+ *
+ * This file is part of LambDynamicLights.
+ *
+ * Licensed under the Lambda License. For more information,
+ * see the LICENSE file.
+ */
+
+package dev.lambdaurora.lambdynlights.engine;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import net.minecraft.util.math.MathHelper;
+
+/**
+ * Represents a bounded cache of precomputed light kernels of a falloff curve.
+ * <p>
+ * A light kernel holds the falloff multiplier of every block around a light source, for a given light radius
+ * and position of the light source within its block. Positions are quantized to a fraction of a block,
+ * so light sources sitting still keep stamping the same kernels instead of evaluating the falloff of every block.
+ * <p>
+ * The light of a small light radius changes faster with the position of the light source, so the quantization step
+ * shrinks with the light radius, keeping the light levels of a kernel within {@value #MAX_LIGHT_LEVEL_ERROR} light level
+ * of the evaluated light levels. Light radii too small to be quantized finely enough are not cached, see {@link #isCached(DynamicLightFalloff, double)}.
+ * <p>
+ * Kernels are indexed by {@code (y * size + z) * size + x}, with coordinates relative to the corner of the kernel,
+ * the block of the light source being at the center of the kernel. The {@linkplain #extent(double) extent} of a kernel
+ * depends on its light radius. Kernels are filled lazily, only the blocks which were stamped at least once are evaluated.
+ * <p>
+ * A cache is not thread-safe, each chunk builder thread uses its own cache.
+ *
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+final class LightKernelCache {
+	/**
+	 * The highest difference between the light levels of a kernel and the evaluated light levels, half the lightmap precision.
+	 */
+	static final double MAX_LIGHT_LEVEL_ERROR = 1.0 / 32.0;
+	// Maximum number of quantized positions of a light source within its block, on each axis.
+	private static final int MAX_SUBDIVISIONS = 256;
+	// Maximum number of multipliers held by the cached kernels of a thread, the default light radius fits a hundred kernels.
+	private static final int MAX_CACHED_MULTIPLIERS = 1 << 19;
+
+	private final DynamicLightFalloff falloff;
+	// Least recently used kernels first.
+	private final Long2ObjectLinkedOpenHashMap<Kernel> kernels = new Long2ObjectLinkedOpenHashMap<>();
+	private int cachedMultipliers = 0;
+
+	LightKernelCache(DynamicLightFalloff falloff) {
+		this.falloff = falloff;
+	}
+
+	/**
+	 * {@return the maximum distance between the block of a light source and a block it lights, on each axis}
+	 *
+	 * @param radius the light radius of the light source
+	 */
+	static int extent(double radius) {
+		// A block is lit if its center is within the light radius, whatever the position of the light source in its block.
+		return MathHelper.floor(radius + 0.5);
+	}
+
+	/**
+	 * Returns the number of quantized positions of a light source within its block on each axis, for the given light radius.
+	 * <p>
+	 * A quantized position is up to half a step away from the light source on each axis, which moves every block
+	 * by up to {@code sqrt(3) / (2 * subdivisions)} relative to the light source. The light level of a block changes
+	 * by at most the luminance times the steepest slope of the falloff curve for each light radius of distance.
+	 *
+	 * @param falloff the falloff curve of the light
+	 * @param radius the light radius of the light source
+	 * @return the number of quantized positions on each axis
+	 */
+	static int subdivisions(DynamicLightFalloff falloff, double radius) {
+		double maxDistanceError = MAX_LIGHT_LEVEL_ERROR * radius / (DynamicLightingEngine.MAX_LUMINANCE * falloff.getMaxSlope());
+		return Math.max(1, MathHelper.ceil(Math.sqrt(3.0) / (2.0 * maxDistanceError)));
+	}
+
+	/**
+	 * {@return {@code true} if the light kernels of the given light radius are cached, or {@code false} if the light is evaluated instead}
+	 * <p>
+	 * Small light radii would need too many quantized positions, but they also light few blocks.
+	 *
+	 * @param falloff the falloff curve of the light
+	 * @param radius the light radius of the light source
+	 */
+	static boolean isCached(DynamicLightFalloff falloff, double radius) {
+		return subdivisions(falloff, radius) <= MAX_SUBDIVISIONS;
+	}
+
+	/**
+	 * Returns the light kernel of a light source at the given position within its block,
+	 * with at least the multipliers of the given box of blocks evaluated.
+	 * <p>
+	 * The box is in kernel coordinates, and must be within the kernel. The returned kernel must not be modified.
+	 * The light radius must be {@linkplain #isCached(DynamicLightFalloff, double) cached}.
+	 *
+	 * @param radius the light radius of the light source
+	 * @param x the X coordinate of the light source within its block, between {@code 0} and {@code 1}
+	 * @param y the Y coordinate of the light source within its block, between {@code 0} and {@code 1}
+	 * @param z the Z coordinate of the light source within its block, between {@code 0} and {@code 1}
+	 * @param minX the X coordinate of the first block of the box, inclusive
+	 * @param minY the Y coordinate of the first block of the box, inclusive
+	 * @param minZ the Z coordinate of the first block of the box, inclusive
+	 * @param maxX the X coordinate of the last block of the box, inclusive
+	 * @param maxY the Y coordinate of the last block of the box, inclusive
+	 * @param maxZ the Z coordinate of the last block of the box, inclusive
+	 * @return the light kernel
+	 */
+	float[] get(double radius, double x, double y, double z, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		int subdivisions = subdivisions(this.falloff, radius);
+		int quantizedX = quantize(x, subdivisions);
+		int quantizedY = quantize(y, subdivisions);
+		int quantizedZ = quantize(z, subdivisions);
+		// The number of subdivisions only depends on the light radius, so the quantized positions fit in 8 bits each.
+		long key = (long) Float.floatToIntBits((float) radius) << 32 | quantizedY << 16 | quantizedZ << 8 | quantizedX;
+
+		var kernel = this.kernels.getAndMoveToLast(key);
+		if (kernel == null) {
+			kernel = new Kernel(
+					(float) radius,
+					(quantizedX + 0.5) / subdivisions, (quantizedY + 0.5) / subdivisions, (quantizedZ + 0.5) / subdivisions
+			);
+			this.kernels.putAndMoveToLast(key, kernel);
+			this.cachedMultipliers += kernel.multipliers.length;
+
+			while (this.cachedMultipliers > MAX_CACHED_MULTIPLIERS && this.kernels.size() > 1) {
+				this.cachedMultipliers -= this.kernels.removeFirst().multipliers.length;
+			}
+		}
+
+		kernel.fill(this.falloff, minX, minY, minZ, maxX, maxY, maxZ);
+		return kernel.multipliers;
+	}
+
+	private static int quantize(double coord, int subdivisions) {
+		return Math.min((int) (coord * subdivisions), subdivisions - 1);
+	}
+
+	/**
+	 * Represents a lazily filled light kernel.
+	 * <p>
+	 * Each row of blocks along the X axis keeps the range of blocks already evaluated, which only grows.
+	 */
+	private static final class Kernel {
+		private final double radius;
+		private final double x;
+		private final double y;
+		private final double z;
+		private final int extent;
+		private final int size;
+		private final float[] multipliers;
+		// Evaluated range of each row, by (y * size + z), the start is inclusive and the end is exclusive.
+		private final byte[] rowStarts;
+		private final byte[] rowEnds;
+
+		Kernel(double radius, double x, double y, double z) {
+			this.radius = radius;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.extent = extent(radius);
+			this.size = this.extent * 2 + 1;
+			this.multipliers = new float[this.size * this.size * this.size];
+			this.rowStarts = new byte[this.size * this.size];
+			this.rowEnds = new byte[this.size * this.size];
+		}
+
+		void fill(DynamicLightFalloff falloff, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+			int endX = maxX + 1;
+
+			for (int blockY = minY; blockY <= maxY; blockY++) {
+				for (int blockZ = minZ; blockZ <= maxZ; blockZ++) {
+					int row = blockY * this.size + blockZ;
+					int start = this.rowStarts[row];
+					int end = this.rowEnds[row];
+
+					if (start == end) {
+						this.evaluate(falloff, row, minX, endX);
+						this.rowStarts[row] = (byte) minX;
+						this.rowEnds[row] = (byte) endX;
+						continue;
+					}
+
+					// Evaluating up to the evaluated range keeps the range contiguous.
+					if (minX < start) {
+						this.evaluate(falloff, row, minX, start);
+						this.rowStarts[row] = (byte) minX;
+					}
+
+					if (endX > end) {
+						this.evaluate(falloff, row, end, endX);
+						this.rowEnds[row] = (byte) endX;
+					}
+				}
+			}
+		}
+
+		private void evaluate(DynamicLightFalloff falloff, int row, int startX, int endX) {
+			double inverseRadiusSquared = 1.0 / (this.radius * this.radius);
+			double dy = row / this.size - this.extent + 0.5 - this.y;
+			double dz = row % this.size - this.extent + 0.5 - this.z;
+			double distanceYZ = dy * dy + dz * dz;
+			int offset = row * this.size;
+
+			for (int blockX = startX; blockX < endX; blockX++) {
+				double dx = blockX - this.extent + 0.5 - this.x;
+				this.multipliers[offset + blockX] = (float) falloff.getMultiplier((dx * dx + distanceYZ) * inverseRadiusSquared);
+			}
+		}
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright © 2026 LambdAurora <email@lambdaurora.dev>
+ *
+ * This file is part of LambDynamicLights.
+ *
+ * Licensed under the Lambda License. For more information,
+ * see the LICENSE file.
+ */
+
+package dev.lambdaurora.lambdynlights.engine;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.level.BlockGetter;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents the blocks the light of a dynamic light source can reach without going through opaque blocks.
+ * <p>
+ * The light is flooded from the block of the light source through the faces of non-opaque blocks,
+ * up to the light radius. Only the block of the light source and its light radius matter, the volume can be reused
+ * as long as the light source stays in the same block, keeps the same light radius, and no block around it changes.
+ * <p>
+ * A light volume is immutable, and can be queried from any thread.
+ *
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+public final class LightVolume {
+	private static final int[] NEIGHBOR_X = {1, -1, 0, 0, 0, 0};
+	private static final int[] NEIGHBOR_Y = {0, 0, 1, -1, 0, 0};
+	private static final int[] NEIGHBOR_Z = {0, 0, 0, 0, 1, -1};
+
+	private final long id;
+	private final int originX;
+	private final int originY;
+	private final int originZ;
+	private final double radius;
+	// Maximum distance between the block of the light source and a reached block, on each axis.
+	private final int extent;
+	private final int size;
+	// Bit set of the reached blocks, indexed by (y * size + z) * size + x relative to the corner of the volume.
+	private final long[] reached;
+	// Chunk sections with at least one reached block, relative to the chunk section of the block of the light source.
+	private final int sectionMask;
+
+	private LightVolume(long id, int originX, int originY, int originZ, double radius, int extent, long[] reached, int sectionMask) {
+		this.id = id;
+		this.originX = originX;
+		this.originY = originY;
+		this.originZ = originZ;
+		this.radius = radius;
+		this.extent = extent;
+		this.size = extent * 2 + 1;
+		this.reached = reached;
+		this.sectionMask = sectionMask;
+	}
+
+	/**
+	 * {@return the number of blocks a light volume of the given light radius may hold, which is the capacity of its flood queue}
+	 *
+	 * @param radius the light radius of the light source
+	 */
+	static int capacity(double radius) {
+		int size = extent(radius) * 2 + 1;
+		return size * size * size;
+	}
+
+	private static int extent(double radius) {
+		return MathHelper.floor(radius + 1);
+	}
+
+	/**
+	 * Floods the light from the given block.
+	 *
+	 * @param id the unique identifier of the new light volume
+	 * @param level the level to flood the light in
+	 * @param originX the X coordinate of the block of the light source
+	 * @param originY the Y coordinate of the block of the light source
+	 * @param originZ the Z coordinate of the block of the light source
+	 * @param radius the light radius of the light source
+	 * @param queue the flood queue to reuse, of at least {@linkplain #capacity(double) the capacity} of the light volume
+	 * @return the new light volume
+	 */
+	static @NotNull LightVolume compute(
+			long id, @NotNull BlockGetter level, int originX, int originY, int originZ, double radius, int[] queue
+	) {
+		int extent = extent(radius);
+		int size = extent * 2 + 1;
+		// Squared distance between block centers past which no block can be reached, whatever the position of the light source in its block.
+		double reachSquared = (radius + 1) * (radius + 1);
+		int originSectionX = originX >> 4;
+		int originSectionY = originY >> 4;
+		int originSectionZ = originZ >> 4;
+
+		var reached = new long[(size * size * size + 63) >> 6];
+		var pos = new BlockPos.Mutable();
+
+		// The block of the light source is always lit, even if it is opaque.
+		int originIndex = (extent * size + extent) * size + extent;
+		reached[originIndex >> 6] |= 1L << originIndex;
+		int sectionMask = SectionMask.bit(0, 0, 0);
+		queue[0] = originIndex;
+
+		int head = 0;
+		int tail = 1;
+
+		while (head < tail) {
+			int index = queue[head++];
+			int x = index % size;
+			int z = (index / size) % size;
+			int y = index / (size * size);
+
+			for (int direction = 0; direction < NEIGHBOR_X.length; direction++) {
+				int dx = x + NEIGHBOR_X[direction] - extent;
+				int dy = y + NEIGHBOR_Y[direction] - extent;
+				int dz = z + NEIGHBOR_Z[direction] - extent;
+				// Also keeps the neighbor within the volume.
+				if (dx * dx + dy * dy + dz * dz > reachSquared) continue;
+
+				int neighbor = ((dy + extent) * size + dz + extent) * size + dx + extent;
+				if ((reached[neighbor >> 6] & (1L << neighbor)) != 0) continue;
+
+				int blockX = originX + dx;
+				int blockY = originY + dy;
+				int blockZ = originZ + dz;
+				if (level.getBlockState(pos.set(blockX, blockY, blockZ)).isSolidRender()) continue;
+
+				reached[neighbor >> 6] |= 1L << neighbor;
+				// The light never floods further than the neighbors of the chunk section of the light source.
+				sectionMask |= SectionMask.bit(
+						(blockX >> 4) - originSectionX, (blockY >> 4) - originSectionY, (blockZ >> 4) - originSectionZ
+				);
+				queue[tail++] = neighbor;
+			}
+		}
+
+		return new LightVolume(id, originX, originY, originZ, radius, extent, reached, sectionMask);
+	}
+
+	/**
+	 * {@return the unique identifier of this light volume}
+	 */
+	long id() {
+		return this.id;
+	}
+
+	/**
+	 * {@return {@code true} if this light volume was flooded from the given block, or {@code false} otherwise}
+	 *
+	 * @param x the X coordinate of the block
+	 * @param y the Y coordinate of the block
+	 * @param z the Z coordinate of the block
+	 */
+	boolean isOrigin(int x, int y, int z) {
+		return this.originX == x && this.originY == y && this.originZ == z;
+	}
+
+	/**
+	 * {@return the light radius this light volume was flooded with}
+	 */
+	double radius() {
+		return this.radius;
+	}
+
+	/**
+	 * {@return the X coordinate of the block of the light source}
+	 */
+	int originX() {
+		return this.originX;
+	}
+
+	/**
+	 * {@return the Y coordinate of the block of the light source}
+	 */
+	int originY() {
+		return this.originY;
+	}
+
+	/**
+	 * {@return the Z coordinate of the block of the light source}
+	 */
+	int originZ() {
+		return this.originZ;
+	}
+
+	/**
+	 * {@return the maximum distance between the block of the light source and a block which may change this light volume, on each axis}
+	 */
+	int extent() {
+		return this.extent;
+	}
+
+	/**
+	 * {@return {@code true} if a change of the given block may change this light volume, or {@code false} otherwise}
+	 *
+	 * @param pos the packed coordinates of the block
+	 */
+	boolean isAffectedBy(long pos) {
+		return Math.abs(BlockPos.unpackLongX(pos) - this.originX) <= this.extent
+				&& Math.abs(BlockPos.unpackLongY(pos) - this.originY) <= this.extent
+				&& Math.abs(BlockPos.unpackLongZ(pos) - this.originZ) <= this.extent;
+	}
+
+	/**
+	 * {@return {@code true} if the light reaches the given block, or {@code false} otherwise}
+	 *
+	 * @param x the X coordinate of the block
+	 * @param y the Y coordinate of the block
+	 * @param z the Z coordinate of the block
+	 */
+	public boolean isReached(int x, int y, int z) {
+		int dx = x - this.originX + this.extent;
+		int dy = y - this.originY + this.extent;
+		int dz = z - this.originZ + this.extent;
+		int last = this.size - 1;
+
+		// Any negative term means the block is outside of the volume.
+		if ((dx | dy | dz | (last - dx) | (last - dy) | (last - dz)) < 0) return false;
+
+		int index = (dy * this.size + dz) * this.size + dx;
+		return (this.reached[index >> 6] & (1L << index)) != 0;
+	}
+
+	/**
+	 * {@return {@code true} if the light reaches at least one block of the given chunk section, or {@code false} otherwise}
+	 *
+	 * @param section the packed coordinates of the chunk section
+	 */
+	boolean reachesSection(long section) {
+		return (this.sectionMask & SectionMask.bit(this.sectionOrigin(), section)) != 0;
+	}
+
+	/**
+	 * {@return the packed coordinates of the chunk section of the block of the light source}
+	 */
+	long sectionOrigin() {
+		return DynamicLightingEngine.packSection(this.originX >> 4, this.originY >> 4, this.originZ >> 4);
+	}
+
+	/**
+	 * {@return the chunk sections with at least one block reached by the light, as a {@link SectionMask}}
+	 * <p>
+	 * The mask is relative to the {@linkplain #sectionOrigin() chunk section of the block of the light source}.
+	 */
+	public int sectionMask() {
+		return this.sectionMask;
+	}
+}
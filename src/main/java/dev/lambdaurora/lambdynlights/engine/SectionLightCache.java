@@ -0,0 +1,195 @@
+/*
+ * Copyright © 2026 LambdAurora <email@lambdaurora.dev>
+ *
+ * This file is part of LambDynamicLights.
+ *
+ * Licensed under the Lambda License. For more information,
+ * see the LICENSE file.
+ */
+
+package dev.lambdaurora.lambdynlights.engine;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import net.minecraft.core.BlockPos;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Represents a bounded cache of the dynamic light levels of whole chunk sections.
+ * <p>
+ * Each cached chunk section remembers the {@linkplain SpatialLookup#getSectionGeneration(int, int, int) generation}
+ * it was computed for, a cached volume is only reused by spatial lookups in which the chunk section has the same generation.
+ * As such, rebuilding a chunk section whose light sources did not change does not recompute its light levels.
+ * <p>
+ * Light levels are stored with the precision of the lightmap, which is a sixteenth of a light level.
+ *
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+public final class SectionLightCache {
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final int capacity;
+	// Least recently used chunk sections first.
+	private final Long2ObjectLinkedOpenHashMap<Volume> volumes;
+	private final ThreadLocal<double[]> buffers = ThreadLocal.withInitial(() -> new double[DynamicLightingEngine.SECTION_VOLUME]);
+
+	public SectionLightCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a new chunk section light cache.
+	 *
+	 * @param capacity the maximum number of chunk sections to cache
+	 */
+	public SectionLightCache(int capacity) {
+		this.capacity = capacity;
+		this.volumes = new Long2ObjectLinkedOpenHashMap<>(capacity);
+	}
+
+	/**
+	 * Returns the quantized dynamic light levels of the given chunk section.
+	 * <p>
+	 * The returned array is indexed by {@code y << 8 | z << 4 | x} with coordinates relative to the chunk section,
+	 * and each entry is the unsigned dynamic light level multiplied by {@code 16}. It must not be modified.
+	 *
+	 * @param lookup the spatial lookup to compute the light levels with
+	 * @param sectionX the X coordinate of the chunk section
+	 * @param sectionY the Y coordinate of the chunk section
+	 * @param sectionZ the Z coordinate of the chunk section
+	 * @return the quantized dynamic light levels, or {@code null} if no light source reaches the chunk section
+	 */
+	public byte[] getSectionLightLevels(@NotNull SpatialLookup lookup, int sectionX, int sectionY, int sectionZ) {
+		int generation = lookup.getSectionGeneration(sectionX, sectionY, sectionZ);
+		if (generation == 0) return null;
+
+		long section = DynamicLightingEngine.packSection(sectionX, sectionY, sectionZ);
+
+		synchronized (this.volumes) {
+			var volume = this.volumes.getAndMoveToLast(section);
+			if (volume != null && volume.generation == generation) return volume.levels;
+		}
+
+		// Computed outside the lock as chunk sections are built concurrently.
+		var buffer = this.buffers.get();
+		lookup.fillSectionLightLevels(sectionX, sectionY, sectionZ, buffer);
+
+		var levels = new byte[DynamicLightingEngine.SECTION_VOLUME];
+		for (int i = 0; i < levels.length; i++) {
+			levels[i] = (byte) (buffer[i] * 16.0);
+		}
+
+		synchronized (this.volumes) {
+			var volume = this.volumes.get(section);
+
+			// Generations only grow, an older spatial lookup must not evict a more recent volume.
+			if (volume == null || volume.generation < generation) {
+				this.volumes.putAndMoveToLast(section, new Volume(generation, levels));
+
+				while (this.volumes.size() > this.capacity) {
+					this.volumes.removeFirst();
+				}
+			}
+		}
+
+		return levels;
+	}
+
+	/**
+	 * Removes every cached chunk section.
+	 */
+	public void clear() {
+		synchronized (this.volumes) {
+			this.volumes.clear();
+			this.volumes.trim(this.capacity);
+		}
+	}
+
+	/**
+	 * {@return a new view of this cache for a single spatial lookup}
+	 *
+	 * @param lookup the spatial lookup of the view
+	 * @param latestLookup the supplier of the latest spatial lookup, used once the spatial lookup of the view is retired
+	 */
+	public @NotNull View view(@NotNull SpatialLookup lookup, @NotNull Supplier<SpatialLookup> latestLookup) {
+		return new View(this, lookup, latestLookup);
+	}
+
+	private record Volume(int generation, byte[] levels) {}
+
+	/**
+	 * Represents a view of a chunk section light cache for a single spatial lookup, like the one used to build a chunk section.
+	 * <p>
+	 * The view remembers the last chunk sections it used to avoid going through the shared cache for every block,
+	 * and as such must only be used by a single thread.
+	 * <p>
+	 * If the spatial lookup of the view is {@linkplain SpatialLookup#isRetired() retired} before a chunk section is computed,
+	 * the view switches to the latest spatial lookup. The chunk sections lit differently by the latest spatial lookup
+	 * are already scheduled to be rebuilt.
+	 */
+	public static final class View {
+		// Direct-mapped by the parity of the chunk section coordinates, neighbouring chunk sections never collide.
+		private static final int SLOTS = 8;
+
+		private final SectionLightCache cache;
+		private final Supplier<SpatialLookup> latestLookup;
+		private SpatialLookup lookup;
+		private final long[] sections = new long[SLOTS];
+		private final byte[][] levels = new byte[SLOTS][];
+		private final boolean[] present = new boolean[SLOTS];
+
+		private View(SectionLightCache cache, SpatialLookup lookup, Supplier<SpatialLookup> latestLookup) {
+			this.cache = cache;
+			this.lookup = lookup;
+			this.latestLookup = latestLookup;
+		}
+
+		/**
+		 * {@return the spatial lookup of this view}
+		 */
+		public @NotNull SpatialLookup getSpatialLookup() {
+			return this.lookup;
+		}
+
+		/**
+		 * Returns the dynamic light level at the given position, with the precision of the lightmap.
+		 *
+		 * @param pos the position
+		 * @return the dynamic light level
+		 */
+		public double getDynamicLightLevel(@NotNull BlockPos pos) {
+			int x = pos.getX();
+			int y = pos.getY();
+			int z = pos.getZ();
+			int sectionX = x >> 4;
+			int sectionY = y >> 4;
+			int sectionZ = z >> 4;
+
+			int slot = (sectionX & 1) | (sectionY & 1) << 1 | (sectionZ & 1) << 2;
+			long section = DynamicLightingEngine.packSection(sectionX, sectionY, sectionZ);
+
+			if (!this.present[slot] || this.sections[slot] != section) {
+				while (!this.lookup.tryAcquire()) {
+					this.lookup = this.latestLookup.get();
+					Arrays.fill(this.present, false);
+				}
+
+				try {
+					this.sections[slot] = section;
+					this.levels[slot] = this.cache.getSectionLightLevels(this.lookup, sectionX, sectionY, sectionZ);
+					this.present[slot] = true;
+				} finally {
+					this.lookup.release();
+				}
+			}
+
+			var levels = this.levels[slot];
+			if (levels == null) return 0.0;
+
+			return (levels[(y & 15) << 8 | (z & 15) << 4 | (x & 15)] & 0xff) / 16.0;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2026 LambdAurora <email@lambdaurora.dev>
+ *
+ * This file is part of LambDynamicLights.
+ *
+ * Licensed under the Lambda License. For more information,
+ * see the LICENSE file.
+ */
+
+package dev.lambdaurora.lambdynlights.engine;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.util.math.MathHelper;
+
+/**
+ * Provides utilities to represent a set of chunk sections around an origin chunk section as a 27-bit mask.
+ * <p>
+ * Each bit stands for one of the chunk sections at most one chunk section away from the origin on each axis,
+ * at index {@code (dy + 1) * 9 + (dz + 1) * 3 + (dx + 1)}. The light of a light source never reaches further
+ * than the neighbors of the chunk section of its block, as its light radius is at most {@value DynamicLightingEngine#MAX_RADIUS}.
+ *
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+public final class SectionMask {
+	/**
+	 * The mask without any chunk section.
+	 */
+	public static final int EMPTY = 0;
+
+	private SectionMask() {
+		throw new UnsupportedOperationException("SectionMask only contains static definitions.");
+	}
+
+	/**
+	 * {@return the packed coordinates of the chunk section containing the block at the given position}
+	 *
+	 * @param x the X coordinate
+	 * @param y the Y coordinate
+	 * @param z the Z coordinate
+	 */
+	public static long origin(double x, double y, double z) {
+		return DynamicLightingEngine.packSection(MathHelper.floor(x) >> 4, MathHelper.floor(y) >> 4, MathHelper.floor(z) >> 4);
+	}
+
+	/**
+	 * {@return the bit of the given chunk section relative to the origin, or {@code 0} if it is too far away from the origin}
+	 *
+	 * @param dx the X offset of the chunk section from the origin
+	 * @param dy the Y offset of the chunk section from the origin
+	 * @param dz the Z offset of the chunk section from the origin
+	 */
+	static int bit(int dx, int dy, int dz) {
+		if (Math.abs(dx) > 1 || Math.abs(dy) > 1 || Math.abs(dz) > 1) return EMPTY;
+
+		return 1 << ((dy + 1) * 9 + (dz + 1) * 3 + dx + 1);
+	}
+
+	/**
+	 * {@return the bit of the given chunk section relative to the given origin, or {@code 0} if it is too far away from the origin}
+	 *
+	 * @param origin the packed coordinates of the origin chunk section
+	 * @param section the packed coordinates of the chunk section
+	 */
+	static int bit(long origin, long section) {
+		return bit(
+				BlockPos.unpackLongX(section) - BlockPos.unpackLongX(origin),
+				BlockPos.unpackLongY(section) - BlockPos.unpackLongY(origin),
+				BlockPos.unpackLongZ(section) - BlockPos.unpackLongZ(origin)
+		);
+	}
+
+	/**
+	 * Returns the packed coordinates of the chunk section of the given bit index.
+	 *
+	 * @param origin the packed coordinates of the origin chunk section
+	 * @param index the index of the bit in the mask
+	 * @return the packed coordinates of the chunk section
+	 */
+	public static long section(long origin, int index) {
+		return DynamicLightingEngine.packSection(
+				BlockPos.unpackLongX(origin) + index % 3 - 1,
+				BlockPos.unpackLongY(origin) + index / 9 - 1,
+				BlockPos.unpackLongZ(origin) + (index / 3) % 3 - 1
+		);
+	}
+}
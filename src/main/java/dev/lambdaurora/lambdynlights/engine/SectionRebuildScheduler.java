@@ -0,0 +1,256 @@
+/*
+ * Copyright © 2026 LambdAurora <email@lambdaurora.dev>
+ *
+ * This file is part of LambDynamicLights.
+ *
+ * Licensed under the Lambda License. For more information,
+ * see the LICENSE file.
+ */
+
+package dev.lambdaurora.lambdynlights.engine;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.util.math.MathHelper;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents the scheduler of the chunk section rebuilds caused by dynamic light changes.
+ * <p>
+ * Rebuild requests are collected and deduplicated until the next flush, which only rebuilds a limited number of chunk sections
+ * so that dynamic lights never flood the chunk builder. The chunk sections closest to the camera and with the largest light change
+ * are rebuilt first, the others are kept for the next flushes. A share of each flush is kept for the oldest requests,
+ * so a chunk section never waits forever behind closer chunk sections.
+ * <p>
+ * The scheduler remembers the {@linkplain SpatialLookup#getSectionGeneration(int, int, int) generations} of each lit chunk section
+ * and of the chunk sections around it, which are sampled by its faces and smooth lighting, when it was last rebuilt.
+ * A generation is never reused, so a request for a chunk section whose generations did not change since then
+ * is dropped without rebuilding anything, whatever rebuilt the chunk section in between.
+ * The remembered generations of the chunk sections which are not lit anymore are pruned once they pile up.
+ *
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+public final class SectionRebuildScheduler {
+	public static final int DEFAULT_MAX_REBUILDS = 64;
+	public static final int MAX_REBUILDS_LIMIT = 4096;
+	// Chunk sections within this distance of the chunk section of the camera on each axis are rebuilt first, as important rebuilds.
+	private static final int IMPORTANT_DISTANCE = 1;
+	// At least one rebuild out of this number goes to the oldest requests when there are more requests than rebuilds.
+	private static final int OLDEST_SHARE = 4;
+	// Number of remembered generations above which the generations of the chunk sections which are not lit anymore are pruned.
+	private static final int MIN_PRUNE_THRESHOLD = 1024;
+
+	// Largest light change requested for each pending chunk section, by packed coordinates.
+	private final Long2IntOpenHashMap pending = new Long2IntOpenHashMap();
+	// Number of the first request of each pending chunk section, requests being numbered in increasing order.
+	private final Long2LongOpenHashMap requestNumbers = new Long2LongOpenHashMap();
+	// Combined generations around each lit chunk section when it was last rebuilt.
+	// Unlit chunk sections are not kept, as they are always rebuilt.
+	private final Long2LongOpenHashMap rebuiltGenerations = new Long2LongOpenHashMap();
+	private int pruneThreshold = MIN_PRUNE_THRESHOLD;
+	private long[] sections = new long[0];
+	private long[] generations = new long[0];
+	// Priority of each pending chunk section, lower is better and negative for important rebuilds.
+	private double[] priorities = new double[0];
+	// Number of the first request of each pending chunk section, lower is older.
+	private double[] ages = new double[0];
+	private int[] order = new int[0];
+	private long lastRequestNumber = 0;
+
+	/**
+	 * Requests the rebuild of the given chunk section.
+	 *
+	 * @param section the packed coordinates of the chunk section
+	 * @param lightChange how much the light changed in the chunk section, as a light level
+	 */
+	public void schedule(long section, int lightChange) {
+		this.pending.mergeInt(section, MathHelper.clamp(lightChange, 1, DynamicLightingEngine.MAX_LUMINANCE), Math::max);
+		this.requestNumbers.putIfAbsent(section, ++this.lastRequestNumber);
+	}
+
+	/**
+	 * {@return the number of chunk sections waiting to be rebuilt}
+	 */
+	public int size() {
+		return this.pending.size();
+	}
+
+	/**
+	 * Rebuilds the pending chunk sections with the best priority, up to the given number of chunk sections.
+	 * <p>
+	 * The priority of a chunk section is its squared distance to the camera weighted by its light change,
+	 * the chunk sections right next to the camera always come first. When there are more chunk sections than rebuilds,
+	 * a share of the rebuilds goes to the chunk sections waiting for the longest time instead.
+	 * Chunk sections whose generations did not change since they were last rebuilt are skipped,
+	 * and do not count towards the limit.
+	 *
+	 * @param lookup the current spatial lookup
+	 * @param maxRebuilds the maximum number of chunk sections to rebuild
+	 * @param cameraX the X coordinate of the camera
+	 * @param cameraY the Y coordinate of the camera
+	 * @param cameraZ the Z coordinate of the camera
+	 * @param action the action rebuilding a chunk section
+	 */
+	public void flush(
+			@NotNull SpatialLookup lookup, int maxRebuilds,
+			double cameraX, double cameraY, double cameraZ, @NotNull RebuildAction action
+	) {
+		if (this.pending.isEmpty()) return;
+
+		if (this.rebuiltGenerations.size() > this.pruneThreshold) {
+			this.pruneRebuiltGenerations(lookup);
+		}
+
+		this.ensureCapacity(this.pending.size());
+
+		int cameraSectionX = MathHelper.floor(cameraX) >> 4;
+		int cameraSectionY = MathHelper.floor(cameraY) >> 4;
+		int cameraSectionZ = MathHelper.floor(cameraZ) >> 4;
+
+		int i = 0;
+		var entries = this.pending.long2IntEntrySet().fastIterator();
+		while (entries.hasNext()) {
+			var entry = entries.next();
+			long section = entry.getLongKey();
+			int sectionX = BlockPos.unpackLongX(section);
+			int sectionY = BlockPos.unpackLongY(section);
+			int sectionZ = BlockPos.unpackLongZ(section);
+			long generation = combineGenerations(lookup, sectionX, sectionY, sectionZ);
+
+			if (generation != 0 && this.rebuiltGenerations.containsKey(section) && this.rebuiltGenerations.get(section) == generation) {
+				// Already rebuilt with the same light sources.
+				entries.remove();
+				this.requestNumbers.remove(section);
+				continue;
+			}
+
+			this.sections[i] = section;
+			this.generations[i] = generation;
+			this.ages[i] = this.requestNumbers.get(section);
+			this.order[i] = i;
+
+			if (Math.abs(sectionX - cameraSectionX) <= IMPORTANT_DISTANCE
+					&& Math.abs(sectionY - cameraSectionY) <= IMPORTANT_DISTANCE
+					&& Math.abs(sectionZ - cameraSectionZ) <= IMPORTANT_DISTANCE) {
+				this.priorities[i] = -1.0;
+			} else {
+				double dx = (sectionX << 4) + 8 - cameraX;
+				double dy = (sectionY << 4) + 8 - cameraY;
+				double dz = (sectionZ << 4) + 8 - cameraZ;
+				int lightChange = entry.getIntValue();
+				this.priorities[i] = (dx * dx + dy * dy + dz * dz) / (lightChange * lightChange);
+			}
+
+			i++;
+		}
+
+		int count = i;
+		int rebuilds = Math.min(count, maxRebuilds);
+
+		if (count > maxRebuilds) {
+			// The oldest requests first, then the best priorities among the other requests.
+			int oldest = Math.max(1, maxRebuilds / OLDEST_SHARE);
+			DynamicLightingEngine.selectPrioritized(this.order, this.ages, 0, count, oldest);
+			DynamicLightingEngine.selectPrioritized(this.order, this.priorities, oldest, count, maxRebuilds);
+		}
+
+		for (i = 0; i < rebuilds; i++) {
+			this.rebuild(this.order[i], action);
+		}
+	}
+
+	/**
+	 * Rebuilds the given pending chunk section.
+	 *
+	 * @param index the index of the pending chunk section
+	 * @param action the action rebuilding a chunk section
+	 */
+	private void rebuild(int index, RebuildAction action) {
+		long section = this.sections[index];
+
+		this.pending.remove(section);
+		this.requestNumbers.remove(section);
+
+		if (this.generations[index] == 0) {
+			this.rebuiltGenerations.remove(section);
+		} else {
+			this.rebuiltGenerations.put(section, this.generations[index]);
+		}
+
+		action.rebuild(
+				BlockPos.unpackLongX(section), BlockPos.unpackLongY(section), BlockPos.unpackLongZ(section),
+				this.priorities[index] < 0
+		);
+	}
+
+	/**
+	 * Forgets the generations of the rebuilt chunk sections which are not lit anymore,
+	 * as a request for such a chunk section is always rebuilt.
+	 *
+	 * @param lookup the current spatial lookup
+	 */
+	private void pruneRebuiltGenerations(SpatialLookup lookup) {
+		this.rebuiltGenerations.keySet().removeIf(section -> combineGenerations(
+				lookup, BlockPos.unpackLongX(section), BlockPos.unpackLongY(section), BlockPos.unpackLongZ(section)
+		) == 0);
+		this.pruneThreshold = Math.max(MIN_PRUNE_THRESHOLD, this.rebuiltGenerations.size() * 2);
+	}
+
+	/**
+	 * {@return the combined generations of the given chunk section and the chunk sections around it, or {@code 0} if none is lit}
+	 *
+	 * @param lookup the spatial lookup
+	 * @param sectionX the X coordinate of the chunk section
+	 * @param sectionY the Y coordinate of the chunk section
+	 * @param sectionZ the Z coordinate of the chunk section
+	 */
+	private static long combineGenerations(SpatialLookup lookup, int sectionX, int sectionY, int sectionZ) {
+		long generations = 0;
+		int index = 0;
+
+		for (int dy = -1; dy <= 1; dy++) {
+			for (int dz = -1; dz <= 1; dz++) {
+				for (int dx = -1; dx <= 1; dx++) {
+					int generation = lookup.getSectionGeneration(sectionX + dx, sectionY + dy, sectionZ + dz);
+					if (generation != 0) {
+						generations += HashCommon.mix((long) generation << 5 | index);
+					}
+
+					index++;
+				}
+			}
+		}
+
+		return generations;
+	}
+
+	private void ensureCapacity(int count) {
+		if (count > this.sections.length) {
+			int capacity = HashCommon.nextPowerOfTwo(count);
+			this.sections = new long[capacity];
+			this.generations = new long[capacity];
+			this.priorities = new double[capacity];
+			this.ages = new double[capacity];
+			this.order = new int[capacity];
+		}
+	}
+
+	/**
+	 * Represents the action rebuilding a chunk section.
+	 */
+	@FunctionalInterface
+	public interface RebuildAction {
+		/**
+		 * Rebuilds the given chunk section.
+		 *
+		 * @param x the X coordinate of the chunk section
+		 * @param y the Y coordinate of the chunk section
+		 * @param z the Z coordinate of the chunk section
+		 * @param important {@code true} if the chunk section is right next to the camera, or {@code false} otherwise
+		 */
+		void rebuild(int x, int y, int z, boolean important);
+	}
+}
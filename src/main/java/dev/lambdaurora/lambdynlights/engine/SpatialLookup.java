@@ -0,0 +1,526 @@
+/*
+ * Copyright © 2026 LambdAurora <email@lambdaurora.dev>
+ *
+ * This file is part of LambDynamicLights.
+ *
+ * Licensed under the Lambda License. For more information,
+ * see the LICENSE file.
+ */
+
+package dev.lambdaurora.lambdynlights.engine;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.util.math.MathHelper;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+/**
+ * Represents an immutable snapshot of the dynamic light sources, indexed by cell.
+ * <p>
+ * A spatial lookup is never modified once published by the {@linkplain DynamicLightingEngine engine},
+ * which means it can be queried from any thread without locking.
+ * <p>
+ * To avoid allocating the light sources of every spatial lookup, the engine alternates between two {@linkplain Storage storages}:
+ * the storage of a spatial lookup is recycled two computations after it was published, once nothing
+ * {@linkplain #tryAcquire() reads} it. The spatial lookup is then {@linkplain #isRetired() retired},
+ * and its light sources must not be queried anymore. The lit chunk sections of a spatial lookup are never recycled.
+ *
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+public final class SpatialLookup {
+	/**
+	 * A spatial lookup without any light source.
+	 */
+	public static final SpatialLookup EMPTY = new SpatialLookup(
+			DynamicLightFalloff.LINEAR, new Storage(0, 0), 0, new Long2IntOpenHashMap(), false
+	);
+	// The Vector API is only used when the game is started with its incubating module.
+	private static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+	private final DynamicLightFalloff falloff;
+	private final Storage storage;
+	private final int size;
+	// Number of chunk section fills reading the light sources, or -1 once the storage is recycled.
+	private final AtomicInteger readers = new AtomicInteger();
+	private final CellLookupTable cells;
+	// Generation of every chunk section with at least one block reached by a light source, by packed coordinates.
+	private final Long2IntOpenHashMap sectionGenerations;
+	// Light sources, sorted by cell in Z-order, a light source being present in every cell its light reaches.
+	private final double[] sourceX;
+	private final double[] sourceY;
+	private final double[] sourceZ;
+	private final int[] sourceLuminance;
+	private final double[] sourceRadius;
+	// Whether each light source moved or was added when this spatial lookup was computed.
+	private final boolean[] sourceMoving;
+	// Light volume of each light source, or null if the light is not occluded.
+	private final LightVolume[] sourceVolumes;
+
+	SpatialLookup(
+			DynamicLightFalloff falloff, Storage storage, int size, Long2IntOpenHashMap sectionGenerations, boolean occlusion
+	) {
+		this.falloff = falloff;
+		this.storage = storage;
+		this.size = size;
+		this.cells = storage.cells;
+		this.sectionGenerations = sectionGenerations;
+		this.sourceX = storage.sourceX;
+		this.sourceY = storage.sourceY;
+		this.sourceZ = storage.sourceZ;
+		this.sourceLuminance = storage.sourceLuminance;
+		this.sourceRadius = storage.sourceRadius;
+		this.sourceMoving = storage.sourceMoving;
+		this.sourceVolumes = occlusion ? storage.sourceVolumes : null;
+	}
+
+	/**
+	 * {@return the falloff curve of the light sources of this spatial lookup}
+	 */
+	public @NotNull DynamicLightFalloff getFalloff() {
+		return this.falloff;
+	}
+
+	/**
+	 * {@return the number of entries in this spatial lookup, a light source having one entry for each cell its light reaches}
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns whether this spatial lookup is retired, in which case its storage has been recycled by the engine.
+	 * <p>
+	 * The light sources of a retired spatial lookup must not be queried anymore, the latest spatial lookup
+	 * of the engine should be used instead.
+	 *
+	 * @return {@code true} if this spatial lookup is retired, or {@code false} otherwise
+	 */
+	public boolean isRetired() {
+		return this.readers.get() < 0;
+	}
+
+	/**
+	 * Tries to acquire this spatial lookup to read its light sources, which prevents the engine from recycling its storage
+	 * until it is {@linkplain #release() released}.
+	 *
+	 * @return {@code true} if this spatial lookup has been acquired, or {@code false} if it is retired
+	 */
+	boolean tryAcquire() {
+		int readers;
+
+		do {
+			readers = this.readers.get();
+			if (readers < 0) return false;
+		} while (!this.readers.compareAndSet(readers, readers + 1));
+
+		return true;
+	}
+
+	/**
+	 * Releases this spatial lookup once acquired.
+	 */
+	void release() {
+		this.readers.decrementAndGet();
+	}
+
+	/**
+	 * Tries to retire this spatial lookup, which fails if it is acquired.
+	 *
+	 * @return {@code true} if this spatial lookup has been retired and its storage can be recycled, or {@code false} otherwise
+	 */
+	boolean tryRetire() {
+		return this.readers.compareAndSet(0, -1);
+	}
+
+	Storage getStorage() {
+		return this.storage;
+	}
+
+	/**
+	 * Returns whether the chunk section of the given position may be lit by any light source.
+	 * <p>
+	 * If this returns {@code false}, the dynamic light level is {@code 0} everywhere in the chunk section.
+	 *
+	 * @param pos the position
+	 * @return {@code true} if the chunk section of the position may be lit, or {@code false} otherwise
+	 */
+	public boolean isSectionLit(@NotNull BlockPos pos) {
+		return this.sectionGenerations.containsKey(DynamicLightingEngine.packSection(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4));
+	}
+
+	/**
+	 * Returns the generation of the given chunk section.
+	 * <p>
+	 * The generation of a chunk section changes every time a light source reaching it changes,
+	 * and a generation is never reused by another state of any chunk section.
+	 *
+	 * @param sectionX the X coordinate of the chunk section
+	 * @param sectionY the Y coordinate of the chunk section
+	 * @param sectionZ the Z coordinate of the chunk section
+	 * @return the generation of the chunk section, or {@code 0} if the chunk section is not lit
+	 */
+	public int getSectionGeneration(int sectionX, int sectionY, int sectionZ) {
+		return this.sectionGenerations.get(DynamicLightingEngine.packSection(sectionX, sectionY, sectionZ));
+	}
+
+	/**
+	 * Runs the given action for every chunk section with at least one block reached by a light source.
+	 *
+	 * @param action the action to run with the packed coordinates of each lit chunk section
+	 */
+	public void forEachLitSection(@NotNull LongConsumer action) {
+		this.sectionGenerations.keySet().forEach(action);
+	}
+
+	Long2IntOpenHashMap getSectionGenerations() {
+		return this.sectionGenerations;
+	}
+
+	/**
+	 * Returns the dynamic light level at the specified position.
+	 * <p>
+	 * Every light source reaching a block is indexed in the cell of that block, so only a single cell is looked at.
+	 * A cell without any light source is never indexed, so this also tells unlit blocks apart
+	 * without looking at the {@linkplain #isSectionLit(BlockPos) lit chunk sections}.
+	 * <p>
+	 * The query does not acquire this spatial lookup, if it is {@linkplain #isRetired() retired} once the query returns,
+	 * the returned light level is meaningless.
+	 *
+	 * @param pos the position
+	 * @return the dynamic light level at the specified position
+	 */
+	public double getDynamicLightLevel(@NotNull BlockPos pos) {
+		int slot = this.cells.find(DynamicLightingEngine.packCell(
+				DynamicLightingEngine.positionToCell(pos.getX()),
+				DynamicLightingEngine.positionToCell(pos.getY()),
+				DynamicLightingEngine.positionToCell(pos.getZ())
+		));
+		if (slot == -1) return 0;
+
+		double result = this.maxDynamicLightLevel(pos, this.cells.start(slot), this.cells.end(slot));
+		return MathHelper.clamp(result, 0, 15);
+	}
+
+	/**
+	 * Fills the given buffer with the dynamic light levels of every block of the given chunk section.
+	 * <p>
+	 * Instead of querying each block, the light sources of each cell of the chunk section are gathered once,
+	 * and the precomputed light kernel of each of them is stamped into the part of the buffer covered by the cell,
+	 * keeping the highest light level of each block.
+	 * Light kernels quantize the position of still light sources within their block,
+	 * so the light levels may differ from {@link #getDynamicLightLevel(BlockPos)} by up to
+	 * {@value LightKernelCache#MAX_LIGHT_LEVEL_ERROR} light level.
+	 * <p>
+	 * The buffer is indexed by {@code y << 8 | z << 4 | x}, with coordinates relative to the chunk section.
+	 * <p>
+	 * This spatial lookup is acquired while the buffer is filled.
+	 *
+	 * @param sectionX the X coordinate of the chunk section
+	 * @param sectionY the Y coordinate of the chunk section
+	 * @param sectionZ the Z coordinate of the chunk section
+	 * @param buffer the buffer of {@value DynamicLightingEngine#SECTION_VOLUME} light levels to fill
+	 * @return {@code true} if any block of the chunk section is lit, or {@code false} otherwise
+	 * @throws IllegalStateException if this spatial lookup is retired
+	 */
+	public boolean fillSectionLightLevels(int sectionX, int sectionY, int sectionZ, double[] buffer) {
+		Arrays.fill(buffer, 0, DynamicLightingEngine.SECTION_VOLUME, 0.0);
+
+		if (!this.sectionGenerations.containsKey(DynamicLightingEngine.packSection(sectionX, sectionY, sectionZ)))
+			return false;
+
+		if (!this.tryAcquire()) {
+			throw new IllegalStateException("Cannot read the light sources of a retired spatial lookup.");
+		}
+
+		try {
+			return this.stampSectionLightLevels(sectionX, sectionY, sectionZ, buffer);
+		} finally {
+			this.release();
+		}
+	}
+
+	private boolean stampSectionLightLevels(int sectionX, int sectionY, int sectionZ, double[] buffer) {
+		int originX = sectionX << 4;
+		int originY = sectionY << 4;
+		int originZ = sectionZ << 4;
+		int firstCellX = sectionX * DynamicLightingEngine.SECTION_CELLS;
+		int firstCellY = sectionY * DynamicLightingEngine.SECTION_CELLS;
+		int firstCellZ = sectionZ * DynamicLightingEngine.SECTION_CELLS;
+
+		boolean lit = false;
+
+		// Cells are visited in Z-order, which is the order of their entries in memory.
+		for (int cellZ = 0; cellZ < DynamicLightingEngine.SECTION_CELLS; cellZ++) {
+			for (int cellY = 0; cellY < DynamicLightingEngine.SECTION_CELLS; cellY++) {
+				for (int cellX = 0; cellX < DynamicLightingEngine.SECTION_CELLS; cellX++) {
+					int slot = this.cells.find(DynamicLightingEngine.packCell(firstCellX + cellX, firstCellY + cellY, firstCellZ + cellZ));
+					if (slot == -1) continue;
+
+					int end = this.cells.end(slot);
+					for (int i = this.cells.start(slot); i < end; i++) {
+						lit |= this.stampLightKernel(
+								buffer,
+								this.sourceX[i] - originX, this.sourceY[i] - originY, this.sourceZ[i] - originZ,
+								this.sourceLuminance[i], this.sourceRadius[i], this.sourceMoving[i],
+								cellX * DynamicLightingEngine.CELL_SIZE, cellY * DynamicLightingEngine.CELL_SIZE,
+								cellZ * DynamicLightingEngine.CELL_SIZE,
+								originX, originY, originZ, this.sourceVolumes == null ? null : this.sourceVolumes[i]
+						);
+					}
+				}
+			}
+		}
+
+		return lit;
+	}
+
+	/**
+	 * Stamps the light kernel of a light source into a cell of the given chunk section buffer,
+	 * keeping the highest light level of each block.
+	 * <p>
+	 * The light kernel of a still light source is looked up by the light radius and the position of the light source within its block,
+	 * so the falloff of each block is read from the kernel instead of being evaluated.
+	 * A moving light source would not stamp the same kernel again, and a small light radius is not cached,
+	 * so their falloff is evaluated directly, only within the cell.
+	 *
+	 * @param buffer the chunk section buffer
+	 * @param x the X coordinate of the light source, relative to the chunk section
+	 * @param y the Y coordinate of the light source, relative to the chunk section
+	 * @param z the Z coordinate of the light source, relative to the chunk section
+	 * @param luminance the luminance of the light source
+	 * @param radius the light radius of the light source
+	 * @param moving {@code true} if the light source moved when this spatial lookup was computed, or {@code false} otherwise
+	 * @param cellX the X coordinate of the first block of the cell, relative to the chunk section
+	 * @param cellY the Y coordinate of the first block of the cell, relative to the chunk section
+	 * @param cellZ the Z coordinate of the first block of the cell, relative to the chunk section
+	 * @param originX the X coordinate of the chunk section origin
+	 * @param originY the Y coordinate of the chunk section origin
+	 * @param originZ the Z coordinate of the chunk section origin
+	 * @param volume the light volume of the light source if the light is occluded, or {@code null} otherwise
+	 * @return {@code true} if any block was lit, or {@code false} otherwise
+	 */
+	private boolean stampLightKernel(
+			double[] buffer, double x, double y, double z, int luminance, double radius, boolean moving,
+			int cellX, int cellY, int cellZ,
+			int originX, int originY, int originZ, @Nullable LightVolume volume
+	) {
+		int sourceX = MathHelper.floor(x);
+		int sourceY = MathHelper.floor(y);
+		int sourceZ = MathHelper.floor(z);
+		int extent = LightKernelCache.extent(radius);
+
+		int minX = Math.max(sourceX - extent, cellX);
+		int minY = Math.max(sourceY - extent, cellY);
+		int minZ = Math.max(sourceZ - extent, cellZ);
+		int maxX = Math.min(sourceX + extent, cellX + DynamicLightingEngine.CELL_SIZE - 1);
+		int maxY = Math.min(sourceY + extent, cellY + DynamicLightingEngine.CELL_SIZE - 1);
+		int maxZ = Math.min(sourceZ + extent, cellZ + DynamicLightingEngine.CELL_SIZE - 1);
+
+		if (moving || !LightKernelCache.isCached(this.falloff, radius)) {
+			return this.evaluateLight(
+					buffer, x, y, z, luminance, radius, minX, minY, minZ, maxX, maxY, maxZ, originX, originY, originZ, volume
+			);
+		}
+
+		// Kernel coordinates of the chunk section origin.
+		int kernelX = extent - sourceX;
+		int kernelY = extent - sourceY;
+		int kernelZ = extent - sourceZ;
+		int size = extent * 2 + 1;
+		float[] kernel = this.falloff.getKernel(
+				radius, x - sourceX, y - sourceY, z - sourceZ,
+				minX + kernelX, minY + kernelY, minZ + kernelZ, maxX + kernelX, maxY + kernelY, maxZ + kernelZ
+		);
+
+		boolean lit = false;
+
+		for (int blockY = minY; blockY <= maxY; blockY++) {
+			for (int blockZ = minZ; blockZ <= maxZ; blockZ++) {
+				int row = blockY << 8 | blockZ << 4;
+				int kernelRow = ((blockY + kernelY) * size + blockZ + kernelZ) * size + kernelX;
+
+				for (int blockX = minX; blockX <= maxX; blockX++) {
+					double lightLevel = kernel[kernelRow + blockX] * luminance;
+					if (lightLevel <= buffer[row | blockX]) continue;
+					if (volume != null && !volume.isReached(originX + blockX, originY + blockY, originZ + blockZ)) continue;
+
+					buffer[row | blockX] = lightLevel;
+					lit = true;
+				}
+			}
+		}
+
+		return lit;
+	}
+
+	/**
+	 * Evaluates the light of a light source in the given box of the given chunk section buffer,
+	 * keeping the highest light level of each block.
+	 *
+	 * @param buffer the chunk section buffer
+	 * @param x the X coordinate of the light source, relative to the chunk section
+	 * @param y the Y coordinate of the light source, relative to the chunk section
+	 * @param z the Z coordinate of the light source, relative to the chunk section
+	 * @param luminance the luminance of the light source
+	 * @param radius the light radius of the light source
+	 * @param minX the X coordinate of the first block of the box, relative to the chunk section
+	 * @param minY the Y coordinate of the first block of the box, relative to the chunk section
+	 * @param minZ the Z coordinate of the first block of the box, relative to the chunk section
+	 * @param maxX the X coordinate of the last block of the box, relative to the chunk section
+	 * @param maxY the Y coordinate of the last block of the box, relative to the chunk section
+	 * @param maxZ the Z coordinate of the last block of the box, relative to the chunk section
+	 * @param originX the X coordinate of the chunk section origin
+	 * @param originY the Y coordinate of the chunk section origin
+	 * @param originZ the Z coordinate of the chunk section origin
+	 * @param volume the light volume of the light source if the light is occluded, or {@code null} otherwise
+	 * @return {@code true} if any block was lit, or {@code false} otherwise
+	 */
+	private boolean evaluateLight(
+			double[] buffer, double x, double y, double z, int luminance, double radius,
+			int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+			int originX, int originY, int originZ, @Nullable LightVolume volume
+	) {
+		double inverseRadiusSquared = 1.0 / (radius * radius);
+		boolean lit = false;
+
+		for (int blockY = minY; blockY <= maxY; blockY++) {
+			double dy = blockY + 0.5 - y;
+
+			for (int blockZ = minZ; blockZ <= maxZ; blockZ++) {
+				double dz = blockZ + 0.5 - z;
+				double distanceYZ = dy * dy + dz * dz;
+				int row = blockY << 8 | blockZ << 4;
+
+				for (int blockX = minX; blockX <= maxX; blockX++) {
+					double dx = blockX + 0.5 - x;
+					double lightLevel = this.falloff.getMultiplier((dx * dx + distanceYZ) * inverseRadiusSquared) * luminance;
+					if (lightLevel <= buffer[row | blockX]) continue;
+					if (volume != null && !volume.isReached(originX + blockX, originY + blockY, originZ + blockZ)) continue;
+
+					buffer[row | blockX] = lightLevel;
+					lit = true;
+				}
+			}
+		}
+
+		return lit;
+	}
+
+	/**
+	 * Returns the highest dynamic light level generated by a run of light sources at the specified position.
+	 * <p>
+	 * The light sources of a run are sorted by decreasing luminance, so the evaluation stops as soon as
+	 * no remaining light source can be brighter than the current light level.
+	 * <p>
+	 * Past the light radius the falloff is {@code 0}, which is equivalent to the radius test.
+	 * Without occlusion, the light sources are evaluated with the {@linkplain VectorizedLightLevels Vector API} if it is available.
+	 *
+	 * @param pos the position
+	 * @param start the index of the first light source of the run, inclusive
+	 * @param end the index of the last light source of the run, exclusive
+	 * @return the dynamic light level at the specified position
+	 */
+	private double maxDynamicLightLevel(BlockPos pos, int start, int end) {
+		double result = 0;
+		// Can't use Entity#squaredDistanceTo because of eye Y coordinate.
+		double x = pos.getX() + 0.5;
+		double y = pos.getY() + 0.5;
+		double z = pos.getZ() + 0.5;
+
+		if (VECTORIZED && this.sourceVolumes == null) {
+			return VectorizedLightLevels.maxDynamicLightLevel(
+					this.falloff, this.sourceX, this.sourceY, this.sourceZ, this.sourceLuminance, this.sourceRadius, x, y, z, start, end
+			);
+		}
+
+		for (int i = start; i < end; i++) {
+			int luminance = this.sourceLuminance[i];
+			// The falloff multiplier is never above 1.
+			if (luminance <= result) break;
+			// The light volume may be missing if the storage is being recycled.
+			var volume = this.sourceVolumes == null ? null : this.sourceVolumes[i];
+			if (volume != null && !volume.isReached(pos.getX(), pos.getY(), pos.getZ())) continue;
+
+			double dx = x - this.sourceX[i];
+			double dy = y - this.sourceY[i];
+			double dz = z - this.sourceZ[i];
+			double radius = this.sourceRadius[i];
+
+			result = Math.max(result, this.falloff.getMultiplier((dx * dx + dy * dy + dz * dz) / (radius * radius)) * luminance);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Represents the light sources and the cell lookup table of a spatial lookup, which are recycled by the engine
+	 * from one spatial lookup to another.
+	 * <p>
+	 * The capacity of a storage never changes, a larger storage is allocated when the light sources do not fit anymore.
+	 */
+	static final class Storage {
+		final CellLookupTable cells;
+		final double[] sourceX;
+		final double[] sourceY;
+		final double[] sourceZ;
+		final int[] sourceLuminance;
+		final double[] sourceRadius;
+		final boolean[] sourceMoving;
+		final LightVolume[] sourceVolumes;
+		// Number of entries filled by the last spatial lookup using this storage.
+		private int size = 0;
+
+		/**
+		 * Creates a new storage.
+		 *
+		 * @param cells the number of cells to fit
+		 * @param entries the number of entries to fit
+		 */
+		Storage(int cells, int entries) {
+			int capacity = entries == 0 ? 0 : HashCommon.nextPowerOfTwo(entries);
+			this.cells = new CellLookupTable(cells);
+			this.sourceX = new double[capacity];
+			this.sourceY = new double[capacity];
+			this.sourceZ = new double[capacity];
+			this.sourceLuminance = new int[capacity];
+			this.sourceRadius = new double[capacity];
+			this.sourceMoving = new boolean[capacity];
+			this.sourceVolumes = new LightVolume[capacity];
+		}
+
+		/**
+		 * Returns whether this storage fits the given number of cells and entries without wasting too much memory.
+		 *
+		 * @param cells the number of cells
+		 * @param entries the number of entries
+		 * @return {@code true} if this storage can be recycled for the cells and entries, or {@code false} otherwise
+		 */
+		boolean fits(int cells, int entries) {
+			return this.cells.fits(cells) && this.cells.capacity() <= HashCommon.arraySize(cells, .5f) * 4
+					&& entries <= this.sourceX.length && this.sourceX.length <= entries * 4;
+		}
+
+		/**
+		 * Clears this storage before being filled with the given number of entries.
+		 *
+		 * @param entries the number of entries
+		 */
+		void clear(int entries) {
+			this.cells.clear();
+
+			// Forget the light volumes past the entries, as they would be kept alive otherwise.
+			if (entries < this.size) {
+				Arrays.fill(this.sourceVolumes, entries, this.size, null);
+			}
+
+			this.size = entries;
+		}
+	}
+}
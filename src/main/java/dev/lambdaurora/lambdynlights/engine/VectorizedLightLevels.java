@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2026 LambdAurora <email@lambdaurora.dev>
+ *
+ * This file is part of LambDynamicLights.
+ *
+ * Licensed under the Lambda License. For more information,
+ * see the LICENSE file.
+ */
+
+package dev.lambdaurora.lambdynlights.engine;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Provides the evaluation of dynamic light levels with the Vector API.
+ * <p>
+ * The Vector API is an incubating module, which is only present if the game is started with
+ * {@code --add-modules jdk.incubator.vector}. This class must not be loaded unless the module is present,
+ * the {@linkplain SpatialLookup spatial lookup} evaluates light levels one light source at a time otherwise.
+ *
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+final class VectorizedLightLevels {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	private VectorizedLightLevels() {
+		throw new UnsupportedOperationException("VectorizedLightLevels only contains static definitions.");
+	}
+
+	/**
+	 * Returns the highest dynamic light level generated by a run of light sources at the specified block center.
+	 * <p>
+	 * The scaled squared distances of as many light sources as the vector length are computed at once,
+	 * and the falloff is only evaluated for the light sources whose light radius contains the block center.
+	 * The light sources of a run are sorted by decreasing luminance, so the evaluation stops as soon as
+	 * no remaining light source can be brighter than the current light level.
+	 *
+	 * @param falloff the falloff curve of the light
+	 * @param sourceX the X coordinates of the light sources
+	 * @param sourceY the Y coordinates of the light sources
+	 * @param sourceZ the Z coordinates of the light sources
+	 * @param sourceLuminance the luminance of the light sources
+	 * @param sourceRadius the light radius of the light sources
+	 * @param x the X coordinate of the block center
+	 * @param y the Y coordinate of the block center
+	 * @param z the Z coordinate of the block center
+	 * @param start the index of the first light source of the run, inclusive
+	 * @param end the index of the last light source of the run, exclusive
+	 * @return the dynamic light level at the specified block center
+	 */
+	static double maxDynamicLightLevel(
+			DynamicLightFalloff falloff,
+			double[] sourceX, double[] sourceY, double[] sourceZ, int[] sourceLuminance, double[] sourceRadius,
+			double x, double y, double z, int start, int end
+	) {
+		double result = 0;
+		int length = SPECIES.length();
+		int upperBound = start + SPECIES.loopBound(end - start);
+		int i = start;
+
+		for (; i < upperBound; i += length) {
+			// The falloff multiplier is never above 1.
+			if (sourceLuminance[i] <= result) return result;
+
+			var dx = DoubleVector.fromArray(SPECIES, sourceX, i).sub(x);
+			var dy = DoubleVector.fromArray(SPECIES, sourceY, i).sub(y);
+			var dz = DoubleVector.fromArray(SPECIES, sourceZ, i).sub(z);
+			var radius = DoubleVector.fromArray(SPECIES, sourceRadius, i);
+			var scaledDistance = dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz)).div(radius.mul(radius));
+
+			// Past the light radius the falloff is 0.
+			var reached = scaledDistance.compare(VectorOperators.LT, 1.0);
+			for (long lanes = reached.toLong(); lanes != 0; lanes &= lanes - 1) {
+				int lane = Long.numberOfTrailingZeros(lanes);
+				result = Math.max(result, falloff.getMultiplier(scaledDistance.lane(lane)) * sourceLuminance[i + lane]);
+			}
+		}
+
+		for (; i < end; i++) {
+			int luminance = sourceLuminance[i];
+			if (luminance <= result) break;
+
+			double dx = x - sourceX[i];
+			double dy = y - sourceY[i];
+			double dz = z - sourceZ[i];
+			double radius = sourceRadius[i];
+
+			result = Math.max(result, falloff.getMultiplier((dx * dx + dy * dy + dz * dz) / (radius * radius)) * luminance);
+		}
+
+		return result;
+	}
+}
@@ -44,7 +44,7 @@ import java.util.stream.Collectors;
  * Represents the settings screen of LambDynamicLights.
  *
  * @author LambdAurora
- * @version 3.2.0
+ * @version 3.3.0
  * @since 1.0.0
  */
 public class SettingsScreen extends SpruceScreen {
@@ -55,6 +55,7 @@ public class SettingsScreen extends SpruceScreen {
 	private final SpruceOption entitiesOption;
 	private final SpruceOption selfOption;
 	private final SpruceOption waterSensitiveOption;
+	private final SpruceOption occlusionOption;
 	private final SpruceOption creeperLightingOption;
 	private final SpruceOption tntLightingOption;
 	private final SpruceOption resetOption;
@@ -69,6 +70,7 @@ public class SettingsScreen extends SpruceScreen {
 		this.entitiesOption = this.config.getEntitiesLightSource().getOption();
 		this.selfOption = this.config.getSelfLightSource().getOption();
 		this.waterSensitiveOption = this.config.getWaterSensitiveCheck().getOption();
+		this.occlusionOption = this.config.getOcclusion().getOption();
 		this.creeperLightingOption = new SpruceCyclingOption("entity.minecraft.creeper",
 				amount -> this.config.setCreeperLightingMode(this.config.getCreeperLightingMode().next()),
 				option -> option.getDisplayText(this.config.getCreeperLightingMode().getTranslatedText()),
@@ -151,6 +153,7 @@ public class SettingsScreen extends SpruceScreen {
 	private void buildGeneralTab(TabContext context) {
 		var list = new SpruceOptionListWidget(Position.of(0, 0), context.width(), context.height());
 		list.addSingleOptionEntry(this.config.dynamicLightsModeOption);
+		list.addSingleOptionEntry(this.occlusionOption);
 		list.addSingleOptionEntry(new SpruceSeparatorOption(DYNAMIC_LIGHT_SOURCES_KEY, true, null));
 		list.addOptionEntry(this.entitiesOption, this.selfOption);
 		list.addOptionEntry(this.waterSensitiveOption, null);
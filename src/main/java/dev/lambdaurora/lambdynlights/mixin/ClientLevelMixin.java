@@ -10,8 +10,11 @@
 package dev.lambdaurora.lambdynlights.mixin;
 
 import dev.lambdaurora.lambdynlights.DynamicLightSource;
+import dev.lambdaurora.lambdynlights.LambDynLights;
 import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.core.BlockPos;
 import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.entity.LevelEntityGetter;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
@@ -32,4 +35,11 @@ public abstract class ClientLevelMixin {
 			dls.setDynamicLightEnabled(false);
 		}
 	}
+
+	@Inject(method = "sendBlockUpdated", at = @At("HEAD"))
+	private void onBlockUpdated(BlockPos pos, BlockState oldState, BlockState newState, int flags, CallbackInfo ci) {
+		if (oldState != newState) {
+			LambDynLights.get().onBlockChanged(pos);
+		}
+	}
 }
@@ -10,7 +10,6 @@
 package dev.lambdaurora.lambdynlights.mixin;
 
 import dev.lambdaurora.lambdynlights.LambDynLights;
-import dev.lambdaurora.lambdynlights.engine.DynamicLightingEngine;
 import net.minecraft.TextFormatting;
 import net.minecraft.client.gui.components.DebugScreenOverlay;
 import org.spongepowered.asm.mixin.Mixin;
@@ -24,7 +23,7 @@ import java.util.List;
  * Adds a debug string for dynamic light sources tracking and updates.
  *
  * @author LambdAurora
- * @version 3.2.0
+ * @version 3.3.0
  * @since 1.3.2
  */
 @Mixin(DebugScreenOverlay.class)
@@ -36,7 +35,7 @@ public class DebugScreenOverlayMixin {
 		var builder = new StringBuilder("Dynamic Light Sources: ");
 		builder.append(ldl.getLightSourcesCount())
 				.append("/")
-				.append(DynamicLightingEngine.MAX_LIGHT_SOURCES)
+				.append(ldl.config.getMaxLightSources())
 				.append(" (U: ")
 				.append(ldl.getLastUpdateCount());
 
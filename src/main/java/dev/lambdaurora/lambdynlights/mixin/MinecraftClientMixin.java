@@ -20,16 +20,16 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 /**
  * Mixin to MinecraftClient.
  * <p>
- * Goal: clear light sources cache when changing world.
+ * Goal: switch to the dynamic lighting state of the new world when changing world.
  *
  * @author LambdAurora
- * @version 1.3.2
+ * @version 3.3.0
  * @since 1.3.2
  */
 @Mixin(Minecraft.class)
 public class MinecraftClientMixin {
 	@Inject(method = "updateLevelInEngines", at = @At("HEAD"))
 	private void onUpdateLevelInEngines(ClientLevel level, CallbackInfo ci) {
-		LambDynLights.get().clearLightSources();
+		LambDynLights.get().switchLevel(level);
 	}
 }
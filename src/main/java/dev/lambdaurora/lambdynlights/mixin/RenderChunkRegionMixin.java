@@ -0,0 +1,58 @@
+/*
+ * Copyright © 2026 LambdAurora <email@lambdaurora.dev>
+ *
+ * This file is part of LambDynamicLights.
+ *
+ * Licensed under the Lambda License. For more information,
+ * see the LICENSE file.
+ */
+
+package dev.lambdaurora.lambdynlights.mixin;
+
+import dev.lambdaurora.lambdynlights.LambDynLights;
+import dev.lambdaurora.lambdynlights.accessor.SpatialLookupHolder;
+import dev.lambdaurora.lambdynlights.engine.SectionLightCache;
+import dev.lambdaurora.lambdynlights.engine.SpatialLookup;
+import net.minecraft.client.renderer.chunk.RenderChunkRegion;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * Mixin to RenderChunkRegion.
+ * <p>
+ * Goal: mesh a whole chunk section against a single dynamic lighting state, reusing cached chunk section light levels.
+ *
+ * @version 3.3.0
+ * @since 3.3.0
+ */
+@Mixin(RenderChunkRegion.class)
+public class RenderChunkRegionMixin implements SpatialLookupHolder {
+	@Unique
+	private SpatialLookup lambdynlights$spatialLookup = SpatialLookup.EMPTY;
+	@Unique
+	private SectionLightCache.View lambdynlights$sectionLightView;
+
+	@Inject(method = "<init>", at = @At("TAIL"))
+	private void onInit(CallbackInfo ci) {
+		this.lambdynlights$spatialLookup = LambDynLights.get().getSpatialLookup();
+	}
+
+	@Override
+	public SpatialLookup lambdynlights$getSpatialLookup() {
+		return this.lambdynlights$spatialLookup;
+	}
+
+	@Override
+	public SectionLightCache.View lambdynlights$getSectionLightView() {
+		// A region is only read by the thread building its chunk section.
+		if (this.lambdynlights$sectionLightView == null) {
+			var ldl = LambDynLights.get();
+			this.lambdynlights$sectionLightView = ldl.getSectionLightCache().view(this.lambdynlights$spatialLookup, ldl::getSpatialLookup);
+		}
+
+		return this.lambdynlights$sectionLightView;
+	}
+}
@@ -26,7 +26,10 @@ public abstract class AoCalculatorMixin {
 	@Dynamic
 	@Inject(method = "getLightmapCoordinates", at = @At(value = "RETURN", ordinal = 0), require = 0, cancellable = true, remap = false)
 	private static void onGetLightmapCoordinates(BlockAndTintGetter level, BlockState state, BlockPos pos, CallbackInfoReturnable<Integer> cir) {
-		if (!level.getBlockState(pos).isSolidRender() && LambDynLights.get().config.getDynamicLightsMode().isEnabled())
-			cir.setReturnValue(LambDynLights.get().getLightmapWithDynamicLight(level, pos, cir.getReturnValue()));
+		var ldl = LambDynLights.get();
+		// Check the cheap section occupancy before the block state.
+		if (ldl.config.getDynamicLightsMode().isEnabled() && ldl.getSpatialLookup(level).isSectionLit(pos)
+				&& !level.getBlockState(pos).isSolidRender())
+			cir.setReturnValue(ldl.getLightmapWithDynamicLight(level, pos, cir.getReturnValue()));
 	}
 }
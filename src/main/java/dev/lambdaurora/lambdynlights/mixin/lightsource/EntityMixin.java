@@ -12,13 +12,11 @@ package dev.lambdaurora.lambdynlights.mixin.lightsource;
 import dev.lambdaurora.lambdynlights.DynamicLightSource;
 import dev.lambdaurora.lambdynlights.LambDynLights;
 import dev.lambdaurora.lambdynlights.api.DynamicLightHandlers;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import dev.lambdaurora.lambdynlights.engine.LightVolume;
+import dev.lambdaurora.lambdynlights.engine.SectionMask;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.LevelRenderer;
 import net.minecraft.core.BlockPos;
-import net.minecraft.core.ChunkSectionPos;
-import net.minecraft.core.Direction;
-import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.EntityType;
 import net.minecraft.world.level.ChunkPos;
@@ -68,6 +66,8 @@ public abstract class EntityMixin implements DynamicLightSource {
 	@Unique
 	private int lambdynlights$lastLuminance = 0;
 	@Unique
+	private double lambdynlights$lastRadius = 0;
+	@Unique
 	private long lambdynlights$lastUpdate = 0;
 	@Unique
 	private double lambdynlights$prevX;
@@ -75,8 +75,13 @@ public abstract class EntityMixin implements DynamicLightSource {
 	private double lambdynlights$prevY;
 	@Unique
 	private double lambdynlights$prevZ;
+	// Lit chunk sections, as a section mask relative to an origin chunk section.
+	@Unique
+	private long lambdynlights$trackedOrigin;
 	@Unique
-	private LongOpenHashSet lambdynlights$trackedLitChunkPos = new LongOpenHashSet();
+	private int lambdynlights$trackedSections = SectionMask.EMPTY;
+	@Unique
+	private LightVolume lambdynlights$lightVolume;
 
 	@Inject(method = "tick", at = @At("TAIL"))
 	public void onTick(CallbackInfo ci) {
@@ -164,46 +169,35 @@ public abstract class EntityMixin implements DynamicLightSource {
 		double deltaZ = this.getZ() - this.lambdynlights$prevZ;
 
 		int luminance = this.getLuminance();
-
-		if (Math.abs(deltaX) > 0.1D || Math.abs(deltaY) > 0.1D || Math.abs(deltaZ) > 0.1D || luminance != this.lambdynlights$lastLuminance) {
+		double radius = this.getDynamicLightRadius();
+		var lambDynLights = LambDynLights.get();
+		// The light volume changes when the light source moves to another block, or when a block around it changes.
+		var lightVolume = luminance > 0 ? lambDynLights.getLightVolume(this) : null;
+		// The chunk sections lit by the spatial lookup, which indexes the light source with a slight lag.
+		long litOrigin = lambDynLights.getLitSectionOrigin(this);
+		int litSections = lambDynLights.getLitSectionMask(this);
+
+		if (Math.abs(deltaX) > 0.1D || Math.abs(deltaY) > 0.1D || Math.abs(deltaZ) > 0.1D || luminance != this.lambdynlights$lastLuminance
+				|| radius != this.lambdynlights$lastRadius || lightVolume != this.lambdynlights$lightVolume
+				|| litSections != this.lambdynlights$trackedSections
+				|| (litSections != SectionMask.EMPTY && litOrigin != this.lambdynlights$trackedOrigin)) {
+			// Rebuilds are prioritized by how much the light changed, a light turning off changes as much as one turning on.
+			int lightChange = Math.max(luminance, this.lambdynlights$lastLuminance);
 			this.lambdynlights$prevX = this.getX();
 			this.lambdynlights$prevY = this.getY();
 			this.lambdynlights$prevZ = this.getZ();
 			this.lambdynlights$lastLuminance = luminance;
+			this.lambdynlights$lastRadius = radius;
+			this.lambdynlights$lightVolume = lightVolume;
 
-			var newPos = new LongOpenHashSet();
-
-			if (luminance > 0) {
-				var entityChunkPos = this.chunkPosition();
-				var chunkPos = new BlockPos.Mutable(entityChunkPos.x, ChunkSectionPos.blockToSectionCoord(this.getEyeY()), entityChunkPos.z);
-
-				LambDynLights.scheduleChunkRebuild(renderer, chunkPos);
-				LambDynLights.updateTrackedChunks(chunkPos, this.lambdynlights$trackedLitChunkPos, newPos);
-
-				var directionX = (this.getBlockPos().getX() & 15) >= 8 ? Direction.EAST : Direction.WEST;
-				var directionY = (MathHelper.floor(this.getEyeY()) & 15) >= 8 ? Direction.UP : Direction.DOWN;
-				var directionZ = (this.getBlockPos().getZ() & 15) >= 8 ? Direction.SOUTH : Direction.NORTH;
-
-				for (int i = 0; i < 7; i++) {
-					if (i % 4 == 0) {
-						chunkPos.move(directionX); // X
-					} else if (i % 4 == 1) {
-						chunkPos.move(directionZ); // XZ
-					} else if (i % 4 == 2) {
-						chunkPos.move(directionX.getOpposite()); // Z
-					} else {
-						chunkPos.move(directionZ.getOpposite()); // origin
-						chunkPos.move(directionY); // Y
-					}
-					LambDynLights.scheduleChunkRebuild(renderer, chunkPos);
-					LambDynLights.updateTrackedChunks(chunkPos, this.lambdynlights$trackedLitChunkPos, newPos);
-				}
-			}
+			// Schedules the rebuild of the previously lit chunks, chunks which stay lit are only rebuilt once.
+			this.lambdynlights$scheduleTrackedChunksRebuild(renderer, lightChange);
 
-			// Schedules the rebuild of removed chunks.
-			this.lambdynlights$scheduleTrackedChunksRebuild(renderer);
 			// Update tracked lit chunks.
-			this.lambdynlights$trackedLitChunkPos = newPos;
+			this.lambdynlights$trackedOrigin = litOrigin;
+			this.lambdynlights$trackedSections = litSections;
+			// Schedules the rebuild of the newly lit chunks.
+			this.lambdynlights$scheduleTrackedChunksRebuild(renderer, lightChange);
 			return true;
 		}
 		return false;
@@ -211,9 +205,16 @@ public abstract class EntityMixin implements DynamicLightSource {
 
 	@Override
 	public void lambdynlights$scheduleTrackedChunksRebuild(@NotNull LevelRenderer renderer) {
+		// The light source is gone, which is the largest light change.
+		this.lambdynlights$scheduleTrackedChunksRebuild(renderer, 15);
+	}
+
+	@Unique
+	private void lambdynlights$scheduleTrackedChunksRebuild(@NotNull LevelRenderer renderer, int lightChange) {
 		if (Minecraft.getInstance().level == this.level())
-			for (long pos : this.lambdynlights$trackedLitChunkPos) {
-				LambDynLights.scheduleChunkRebuild(renderer, pos);
+			for (int sections = this.lambdynlights$trackedSections; sections != SectionMask.EMPTY; sections &= sections - 1) {
+				long pos = SectionMask.section(this.lambdynlights$trackedOrigin, Integer.numberOfTrailingZeros(sections));
+				LambDynLights.scheduleChunkRebuild(renderer, pos, lightChange);
 			}
 	}
 }